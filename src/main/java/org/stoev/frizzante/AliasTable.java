@@ -0,0 +1,134 @@
+package org.stoev.frizzante;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Walker's alias table, constructed using Vose's method.
+ *
+ * <p>Once built, the table picks a weighted random index in constant time, using a single
+ * uniformly-distributed double. The probability of picking a given index is exactly the
+ * same as the one produced by a linear scan over the cumulative weights.
+ *
+ * <p>The table is immutable and can therefore be shared between threads.
+**/
+
+final class AliasTable {
+	private final double[] probability;
+	private final int[] alias;
+
+	AliasTable(final double[] weights) {
+		final int count = weights.length;
+
+		probability = new double[count];
+		alias = new int[count];
+
+		if (count == 0) {
+			return;
+		}
+
+		double weightSum = 0;
+
+		for (double weight: weights) {
+			weightSum += weight;
+		}
+
+		if (!(weightSum > 0)) {
+			// All alternatives have been demoted down to nothing, so we treat them as equal
+			for (int i = 0; i < count; i++) {
+				probability[i] = 1;
+				alias[i] = i;
+			}
+			return;
+		}
+
+		final double[] scaled = new double[count];
+		final Deque<Integer> small = new ArrayDeque<Integer>();
+		final Deque<Integer> large = new ArrayDeque<Integer>();
+
+		for (int i = 0; i < count; i++) {
+			scaled[i] = weights[i] * count / weightSum;
+
+			if (scaled[i] < 1) {
+				small.push(i);
+			} else {
+				large.push(i);
+			}
+		}
+
+		while (!small.isEmpty() && !large.isEmpty()) {
+			int less = small.pop();
+			int more = large.pop();
+
+			probability[less] = scaled[less];
+			alias[less] = more;
+
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+
+			if (scaled[more] < 1) {
+				small.push(more);
+			} else {
+				large.push(more);
+			}
+		}
+
+		// Whatever remains is due to floating-point rounding and is as good as certain
+
+		while (!large.isEmpty()) {
+			int more = large.pop();
+			probability[more] = 1;
+			alias[more] = more;
+		}
+
+		while (!small.isEmpty()) {
+			int less = small.pop();
+			probability[less] = 1;
+			alias[less] = less;
+		}
+	}
+
+	/**
+	Picks an index using a random double between 0 (inclusive) and 1 (exclusive)
+	**/
+
+	int pick(final double random) {
+		assert probability.length > 0;
+
+		final double scaled = random * probability.length;
+		int column = (int) scaled;
+
+		if (column >= probability.length) {
+			column = probability.length - 1;
+		}
+
+		if (scaled - column < probability[column]) {
+			return column;
+		} else {
+			return alias[column];
+		}
+	}
+
+	int size() {
+		return probability.length;
+	}
+
+	/**
+	Returns the probability that pick() will return a given index.
+	**/
+
+	double getProbability(final int index) {
+		double result = 0;
+
+		for (int column = 0; column < probability.length; column++) {
+			if (column == index) {
+				result += probability[column];
+			}
+
+			if (alias[column] == index) {
+				result += 1 - probability[column];
+			}
+		}
+
+		return result / probability.length;
+	}
+}
@@ -1,6 +1,12 @@
 package org.stoev.frizzante;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 
 public final class App {
 	private App() {
@@ -14,8 +20,14 @@ public final class App {
 		long count = Long.MAX_VALUE;
 		long range = Long.MAX_VALUE;
 		long seed = 1;
+		IdMode idMode = IdMode.RANDOM;
 
 		String grammarFile = null;
+		String corpusFile = null;
+		boolean loop = false;
+		String emitFile = null;
+		boolean ordered = false;
+		String delimiter = "\n";
 		FuzzRunnableFactory runnableFactory = null;
 
 		for (int i = 0; i < args.length; i++) {
@@ -41,11 +53,39 @@ public final class App {
 						i++;
 						range = Long.parseLong(args[i]);
 						break;
+					case "-ids":
+					case "--ids":
+						i++;
+						idMode = IdMode.valueOf(args[i].toUpperCase(Locale.ROOT));
+						break;
 					case "-grammar":
 					case "--grammar":
 						i++;
 						grammarFile = args[i];
 						break;
+					case "-corpus":
+					case "--corpus":
+						i++;
+						corpusFile = args[i];
+						break;
+					case "-loop":
+					case "--loop":
+						loop = true;
+						break;
+					case "-emit":
+					case "--emit":
+						i++;
+						emitFile = args[i];
+						break;
+					case "-ordered":
+					case "--ordered":
+						ordered = true;
+						break;
+					case "-delimiter":
+					case "--delimiter":
+						i++;
+						delimiter = args[i].replace("\\n", "\n").replace("\\t", "\t");
+						break;
 					case "-runnableFactory":
 					case "--runnableFactory":
 						i++;
@@ -67,18 +107,47 @@ public final class App {
 			}
 		}
 
-		if (grammarFile == null) {
+		// A corpus is replayed as is, so the grammar is only needed when generating
+		if (grammarFile == null && corpusFile == null) {
 			throw new IllegalArgumentException("-grammar command line argument required");
 		}
 
+		if (emitFile != null) {
+			if (grammarFile == null) {
+				throw new IllegalArgumentException("-grammar command line argument required");
+			}
+
+			final GlobalContext<String> emitContext = new GlobalContext.ContextBuilder<String>()
+				.grammar(new File(grammarFile))
+				.idRange(0, range)
+				.idMode(idMode)
+				.random(seed)
+				.threads(threads)
+				.duration(duration)
+				.tracing(TraceLevel.NONE)
+				.build();
+
+			emit(emitContext, emitFile, ordered, delimiter, count);
+			return;
+		}
+
 		if (runnableFactory == null) {
 			throw new IllegalArgumentException("-runnableFactory command line argument required");
 		}
 
+		if (corpusFile != null) {
+			runnableFactory = new CorpusRunnableFactory(Corpus.open(new File(corpusFile)), runnableFactory, loop);
+		}
+
+		final GlobalContext.ContextBuilder<String> contextBuilder = new GlobalContext.ContextBuilder<String>();
 
-		final GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>()
-			.grammar(new File(grammarFile))
+		if (grammarFile != null) {
+			contextBuilder.grammar(new File(grammarFile));
+		}
+
+		final GlobalContext<String> globalContext = contextBuilder
 			.idRange(0, range)
+			.idMode(idMode)
 			.random(seed)
 			.runnableFactory(runnableFactory)
 			.count(count)
@@ -88,4 +157,25 @@ public final class App {
 
 		globalContext.run();
 	}
+
+	/**
+	Writes count Sentences to a file, or to stdout for "-", and reports the throughput to stderr
+	**/
+
+	private static void emit(final GlobalContext<String> globalContext, final String emitFile, final boolean ordered, final String delimiter, final long count) throws IOException {
+		FileOutputStream stream;
+
+		if ("-".equals(emitFile)) {
+			// Writing to the file descriptor directly bypasses the buffering and locking of System.out
+			stream = new FileOutputStream(FileDescriptor.out);
+		} else {
+			stream = new FileOutputStream(emitFile);
+		}
+
+		try (FileChannel channel = stream.getChannel()) {
+			SentenceEmitter<String> emitter = new SentenceEmitter<String>(globalContext, channel, delimiter.getBytes(StandardCharsets.UTF_8));
+			emitter.emit(count, ordered);
+			System.err.println(emitter.getReport());
+		}
+	}
 }
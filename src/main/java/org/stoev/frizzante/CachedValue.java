@@ -2,13 +2,21 @@ package org.stoev.frizzante;
 
 class CachedValue<T> implements Generatable<T> {
 	private final String ruleName;
+	private final int cacheSlot;
 
-	CachedValue(final String rn) {
+	CachedValue(final String rn, final int slot) {
 		ruleName = rn;
+		cacheSlot = slot;
 	}
 
 	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
-		sentence.addAll(threadContext.getCachedValue(ruleName));
+		Sentence<T> cachedValue = threadContext.getCachedValue(cacheSlot);
+
+		if (cachedValue == null) {
+			throw new IllegalArgumentException("Cached value for rule '" + ruleName + "' was requested, but not available.");
+		}
+
+		sentence.addAll(cachedValue);
 	}
 
 	public String toString() {
@@ -0,0 +1,181 @@
+package org.stoev.frizzante;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An optimization pass that shortens the element lists of all productions after the grammar has been compiled:
+ * <ul>
+ * <li> references to rules that always produce the same output are replaced by that output, as a literal;
+ * <li> if inlining is enabled, references to other rules with a single production are replaced by the
+ * elements of that production, so chains such as {@code select_list: column_list ;} cost nothing;
+ * <li> runs of adjacent literals are merged into a single literal.
+ * </ul>
+ * The generated text is unchanged, but a Sentence will contain fewer, longer elements. A folded or inlined rule
+ * no longer draws a random number or appears in the derivation trace, which does not matter for adaptive weights
+ * or simplification, as a rule with a single production has no alternatives. The rules the inlined rule refers
+ * to are still generated via their own productions, so they are traced, weighted and simplified as before.
+ * Cached rules are never folded or inlined, and neither are rules that refer back to themselves or repetitions,
+ * whose single production holds the repeated element only once.
+ *
+ * <p>The folded elements are kept separately from the parsed ones, so the pass can be repeated whenever the
+ * grammar is recompiled, e.g. after a visitor has been registered.
+**/
+
+final class ConstantFolder<T> {
+	private final boolean folding;
+	private final boolean inlining;
+
+	// The constant output of each rule examined so far, or null if the rule is not constant
+	private final Map<GrammarRule<T>, String> constantValues = new IdentityHashMap<GrammarRule<T>, String>();
+
+	// The optimized elements of each single-production rule examined so far, or null if the rule can not be inlined
+	private final Map<GrammarRule<T>, List<Generatable<T>>> inlinedElements = new IdentityHashMap<GrammarRule<T>, List<Generatable<T>>>();
+
+	private int elementsBefore;
+	private int elementsAfter;
+
+	ConstantFolder(final boolean f, final boolean i) {
+		folding = f;
+		inlining = i;
+	}
+
+	void fold(final GrammarProduction<T> production) {
+		List<Generatable<T>> sourceElements = production.getSourceElements();
+		List<Generatable<T>> foldedElements = optimize(sourceElements);
+
+		elementsBefore += sourceElements.size();
+		elementsAfter += foldedElements.size();
+
+		production.setFoldedElements(foldedElements);
+	}
+
+	private List<Generatable<T>> optimize(final List<Generatable<T>> sourceElements) {
+		List<Generatable<T>> foldedElements = new ArrayList<Generatable<T>>(sourceElements.size());
+		StringBuilder pendingLiteral = new StringBuilder();
+
+		for (Generatable<T> element: sourceElements) {
+			String constantValue = null;
+			List<Generatable<T>> inlined = null;
+
+			if (folding) {
+				constantValue = getConstantValue(element);
+			}
+
+			if (constantValue == null && inlining && isFoldable(element)) {
+				inlined = getInlinedElements((GrammarRule<T>) element);
+			}
+
+			if (constantValue != null) {
+				pendingLiteral.append(constantValue);
+			} else if (inlined != null) {
+				for (Generatable<T> inlinedElement: inlined) {
+					if (folding && inlinedElement instanceof GrammarLiteral) {
+						pendingLiteral.append(inlinedElement.getName());
+					} else {
+						flushLiteral(pendingLiteral, foldedElements);
+						foldedElements.add(inlinedElement);
+					}
+				}
+			} else {
+				flushLiteral(pendingLiteral, foldedElements);
+				foldedElements.add(element);
+			}
+		}
+
+		flushLiteral(pendingLiteral, foldedElements);
+
+		return foldedElements;
+	}
+
+	private List<Generatable<T>> getInlinedElements(final GrammarRule<T> rule) {
+		if (inlinedElements.containsKey(rule)) {
+			return inlinedElements.get(rule);
+		}
+
+		// As with constants, a rule that is being inlined can not be inlined into itself
+
+		inlinedElements.put(rule, null);
+
+		if (rule.isCached() || rule.getProductions().size() != 1) {
+			return null;
+		}
+
+		List<Generatable<T>> elements = optimize(rule.getProductions().get(0).getSourceElements());
+
+		if (elements.contains(rule)) {
+			return null;
+		}
+
+		inlinedElements.put(rule, elements);
+		return elements;
+	}
+
+	int getElementsBefore() {
+		return elementsBefore;
+	}
+
+	int getElementsAfter() {
+		return elementsAfter;
+	}
+
+	private static <T> boolean isFoldable(final Generatable<T> element) {
+		return element instanceof GrammarRule && !(element instanceof GrammarRepetition);
+	}
+
+	private void flushLiteral(final StringBuilder pendingLiteral, final List<Generatable<T>> foldedElements) {
+		// Constant rules that produce nothing leave nothing behind
+		if (pendingLiteral.length() > 0) {
+			foldedElements.add(new GrammarLiteral<T>(pendingLiteral.toString()));
+			pendingLiteral.setLength(0);
+		}
+	}
+
+	private String getConstantValue(final Generatable<T> element) {
+		if (element instanceof GrammarLiteral) {
+			return element.getName();
+		} else if (isFoldable(element)) {
+			return getConstantValue((GrammarRule<T>) element);
+		} else {
+			return null;
+		}
+	}
+
+	private String getConstantValue(final GrammarRule<T> rule) {
+		if (constantValues.containsKey(rule)) {
+			return constantValues.get(rule);
+		}
+
+		// Cached rules must still run, so that their value is available to CachedValue later on.
+		// Marking the rule as non-constant up front also stops infinite recursion in cyclic grammars.
+
+		constantValues.put(rule, null);
+
+		if (rule.isCached()) {
+			return null;
+		}
+
+		List<GrammarProduction<T>> productions = rule.getProductions();
+
+		if (productions.size() != 1) {
+			return null;
+		}
+
+		StringBuilder value = new StringBuilder();
+
+		for (Generatable<T> element: productions.get(0).getSourceElements()) {
+			String elementValue = getConstantValue(element);
+
+			if (elementValue == null) {
+				return null;
+			}
+
+			value.append(elementValue);
+		}
+
+		constantValues.put(rule, value.toString());
+		return value.toString();
+	}
+}
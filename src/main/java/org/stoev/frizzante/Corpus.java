@@ -0,0 +1,278 @@
+package org.stoev.frizzante;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A corpus of pre-generated Sentences, as written by CorpusWriter, mapped into memory for reading.
+ *
+ * <p>The corpus consists of two files. The data file holds one record per Sentence, an int length followed by
+ * the Sentence encoded as UTF-8. The index file, named after the data file with an .index suffix, holds the id
+ * of the first Sentence, the number of Sentences and the offset of each record in the data file. Sentence ids
+ * are consecutive, so the record of any id is found with a single lookup.
+ *
+ * <p>Both files are mapped read-only. A mapping can not be larger than 2GB, so larger files are mapped as
+ * several segments, split on record boundaries. Reading is done through a Cursor, which returns the record of
+ * a Sentence as a view into the mapped memory, without copying, parsing or creating any objects.
+ *
+ * <p>The Corpus itself can be shared by any number of threads, each of which uses its own Cursor.
+**/
+
+public final class Corpus {
+	static final int DATA_MAGIC = 0x46525a44;
+	static final int INDEX_MAGIC = 0x46525a49;
+	static final int VERSION = 1;
+
+	static final int DATA_HEADER_SIZE = 8;
+	static final int INDEX_HEADER_SIZE = 24;
+	static final int INDEX_ENTRY_SIZE = 8;
+	static final int LENGTH_SIZE = 4;
+
+	static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+	private static final int INDEX_SEGMENT_SHIFT = 27;
+
+	private final long startId;
+	private final long count;
+
+	private final LongBuffer[] indexSegments;
+
+	// The data segments, the offset in the data file each one starts at, and the position of its first record
+	private final ByteBuffer[] dataSegments;
+	private final long[] segmentOffsets;
+	private final long[] segmentFirstPositions;
+
+	private Corpus(final File dataFile, final long maxSegmentSize) throws IOException {
+		try (
+			RandomAccessFile dataRandomAccessFile = new RandomAccessFile(dataFile, "r");
+			RandomAccessFile indexRandomAccessFile = new RandomAccessFile(getIndexFile(dataFile), "r")
+		) {
+			FileChannel dataChannel = dataRandomAccessFile.getChannel();
+			FileChannel indexChannel = indexRandomAccessFile.getChannel();
+
+			if (indexChannel.size() < INDEX_HEADER_SIZE || dataChannel.size() < DATA_HEADER_SIZE) {
+				throw new IllegalArgumentException("Corpus file " + dataFile + " is truncated.");
+			}
+
+			ByteBuffer indexHeader = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, INDEX_HEADER_SIZE);
+			ByteBuffer dataHeader = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_HEADER_SIZE);
+
+			if (indexHeader.getInt() != INDEX_MAGIC || dataHeader.getInt() != DATA_MAGIC) {
+				throw new IllegalArgumentException("File " + dataFile + " is not a corpus.");
+			}
+
+			if (indexHeader.getInt() != VERSION || dataHeader.getInt() != VERSION) {
+				throw new IllegalArgumentException("Corpus file " + dataFile + " has an unsupported version.");
+			}
+
+			startId = indexHeader.getLong();
+			count = indexHeader.getLong();
+
+			if (indexChannel.size() != INDEX_HEADER_SIZE + count * INDEX_ENTRY_SIZE) {
+				throw new IllegalArgumentException("Corpus index of " + dataFile + " is truncated.");
+			}
+
+			indexSegments = mapIndex(indexChannel);
+
+			List<Long> offsets = new ArrayList<Long>();
+			List<Long> firstPositions = new ArrayList<Long>();
+			long dataSize = dataChannel.size();
+
+			offsets.add(0L);
+			firstPositions.add(0L);
+
+			// Start a new segment before each record that would run past the end of the current one
+			if (dataSize > maxSegmentSize) {
+				for (long position = 0; position < count; position++) {
+					long recordEnd = dataSize;
+
+					if (position + 1 < count) {
+						recordEnd = getOffset(position + 1);
+					}
+
+					if (recordEnd - offsets.get(offsets.size() - 1) > maxSegmentSize) {
+						offsets.add(getOffset(position));
+						firstPositions.add(position);
+					}
+				}
+			}
+
+			dataSegments = new ByteBuffer[offsets.size()];
+			segmentOffsets = new long[offsets.size()];
+			segmentFirstPositions = new long[offsets.size()];
+
+			for (int i = 0; i < dataSegments.length; i++) {
+				long segmentEnd = dataSize;
+
+				if (i + 1 < dataSegments.length) {
+					segmentEnd = offsets.get(i + 1);
+				}
+
+				segmentOffsets[i] = offsets.get(i);
+				segmentFirstPositions[i] = firstPositions.get(i);
+				dataSegments[i] = dataChannel.map(FileChannel.MapMode.READ_ONLY, segmentOffsets[i], segmentEnd - segmentOffsets[i]);
+			}
+		}
+	}
+
+	/**
+	Maps the corpus written by CorpusWriter into the given data file
+	**/
+
+	public static Corpus open(final File dataFile) throws IOException {
+		return new Corpus(dataFile, MAX_SEGMENT_SIZE);
+	}
+
+	/**
+	As open(), with a smaller segment size, so that segmenting can be tested on small files
+	**/
+
+	static Corpus open(final File dataFile, final long maxSegmentSize) throws IOException {
+		return new Corpus(dataFile, maxSegmentSize);
+	}
+
+	static File getIndexFile(final File dataFile) {
+		return new File(dataFile.getPath() + ".index");
+	}
+
+	private LongBuffer[] mapIndex(final FileChannel indexChannel) throws IOException {
+		long entriesPerSegment = 1L << INDEX_SEGMENT_SHIFT;
+		LongBuffer[] segments = new LongBuffer[(int) ((count + entriesPerSegment - 1) >>> INDEX_SEGMENT_SHIFT)];
+
+		for (int i = 0; i < segments.length; i++) {
+			long entries = Math.min(entriesPerSegment, count - i * entriesPerSegment);
+			long position = INDEX_HEADER_SIZE + i * entriesPerSegment * INDEX_ENTRY_SIZE;
+			segments[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY, position, entries * INDEX_ENTRY_SIZE).asLongBuffer();
+		}
+
+		return segments;
+	}
+
+	private long getOffset(final long position) {
+		return indexSegments[(int) (position >>> INDEX_SEGMENT_SHIFT)].get((int) (position & ((1L << INDEX_SEGMENT_SHIFT) - 1)));
+	}
+
+	public long getStartId() {
+		return startId;
+	}
+
+	public long size() {
+		return count;
+	}
+
+	int getSegmentCount() {
+		return dataSegments.length;
+	}
+
+	/**
+	Returns a new Cursor, positioned before the first Sentence. Each thread needs a Cursor of its own.
+	**/
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Reads the records of a Corpus, either by id via seek() or in order via next().
+	 *
+	 * <p>getBuffer() returns the same ByteBuffer object for every Sentence in a segment, with its position and
+	 * limit set around the current Sentence. It is only valid until the Cursor moves.
+	**/
+
+	public final class Cursor {
+		private final ByteBuffer[] views = new ByteBuffer[dataSegments.length];
+		private long position = -1;
+		private int segment;
+		private ByteBuffer current;
+
+		private Cursor() {
+			for (int i = 0; i < views.length; i++) {
+				views[i] = dataSegments[i].duplicate();
+			}
+		}
+
+		/**
+		Moves to the Sentence with the given id
+		**/
+
+		public ByteBuffer seek(final long id) {
+			if (id < startId || id - startId >= count) {
+				throw new IllegalArgumentException("Sentence id " + id + " is not in the corpus.");
+			}
+
+			position = id - startId;
+			segment = Arrays.binarySearch(segmentFirstPositions, position);
+
+			if (segment < 0) {
+				segment = -segment - 2;
+			}
+
+			return load();
+		}
+
+		/**
+		Moves to the next Sentence, returning false at the end of the corpus
+		**/
+
+		public boolean next() {
+			if (position + 1 >= count) {
+				return false;
+			}
+
+			position++;
+
+			if (segment + 1 < segmentFirstPositions.length && segmentFirstPositions[segment + 1] == position) {
+				segment++;
+			}
+
+			load();
+			return true;
+		}
+
+		private ByteBuffer load() {
+			ByteBuffer view = views[segment];
+			view.clear();
+
+			int recordStart = (int) (getOffset(position) - segmentOffsets[segment]);
+			int length = view.getInt(recordStart);
+
+			view.limit(recordStart + LENGTH_SIZE + length);
+			view.position(recordStart + LENGTH_SIZE);
+			current = view;
+
+			return view;
+		}
+
+		public long getId() {
+			if (current == null) {
+				throw new IllegalStateException("Cursor is not positioned on a Sentence.");
+			}
+
+			return startId + position;
+		}
+
+		public ByteBuffer getBuffer() {
+			if (current == null) {
+				throw new IllegalStateException("Cursor is not positioned on a Sentence.");
+			}
+
+			return current;
+		}
+
+		/**
+		Decodes the current Sentence into a String, leaving the buffer as it was
+		**/
+
+		public String getString() {
+			ByteBuffer buffer = getBuffer();
+			return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.stoev.frizzante;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Replays a Corpus written by CorpusWriter instead of generating Sentences, handing each one to the runnable
+ * of another factory, such as JDBCRunnableFactory, for execution.
+ *
+ * <p>Thread n of N executes the Sentences at positions n - 1, n - 1 + N, n - 1 + 2N and so on, so the threads
+ * together replay the corpus once, roughly in id order, and each run sends the same Sentences as the previous one.
+ * With looping enabled, each thread starts over once it has passed the end, until count() or duration() is reached.
+ *
+ * <p>The delegate must execute Sentences one at a time by overriding FuzzRunnable.execute(). Runnables that
+ * generate and run their own batches, such as JavaBatchRunnable, are rejected when the runnable is created.
+ *
+ * <p>No grammar is needed. When created by App via --runnableFactory, the corpus file is taken from the
+ * corpus.file system property, the factory to execute with from corpus.delegate and looping from corpus.loop.
+**/
+
+public class CorpusRunnableFactory implements FuzzRunnableFactory {
+	private final Corpus corpus;
+	private final FuzzRunnableFactory delegate;
+	private final boolean loop;
+
+	public CorpusRunnableFactory() {
+		this(openCorpus(requiredProperty("corpus.file")), newDelegate(requiredProperty("corpus.delegate")), Boolean.getBoolean("corpus.loop"));
+	}
+
+	public CorpusRunnableFactory(final Corpus c, final FuzzRunnableFactory d, final boolean l) {
+		corpus = c;
+		delegate = d;
+		loop = l;
+	}
+
+	private static String requiredProperty(final String name) {
+		String value = System.getProperty(name);
+
+		if (value == null) {
+			throw new IllegalArgumentException("System property " + name + " is required for replaying a corpus.");
+		}
+
+		return value;
+	}
+
+	private static Corpus openCorpus(final String fileName) {
+		try {
+			return Corpus.open(new File(fileName));
+		} catch (IOException ioException) {
+			throw new IllegalArgumentException(ioException);
+		}
+	}
+
+	private static FuzzRunnableFactory newDelegate(final String className) {
+		try {
+			return (FuzzRunnableFactory) Class.forName(className).newInstance();
+		} catch (ReflectiveOperationException reflectiveOperationException) {
+			throw new IllegalArgumentException(reflectiveOperationException);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("checkstyle:designforextension")
+	public FuzzRunnable newRunnable(final RunnableManager runnableManager, final ThreadContext<?> threadContext) {
+		return new CorpusRunnable(runnableManager, threadContext, corpus, delegate.newRunnable(runnableManager, threadContext), loop);
+	}
+}
+
+class CorpusRunnable extends FuzzRunnable {
+	private final Corpus corpus;
+	private final Corpus.Cursor cursor;
+	private final FuzzRunnable delegate;
+	private final boolean loop;
+	private final long stride;
+	private long position;
+
+	// Reused for every Sentence, so that decoding does not allocate anything but the String itself
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private CharBuffer chars = CharBuffer.allocate(1024);
+
+	CorpusRunnable(final RunnableManager runnableManager, final ThreadContext<?> threadContext, final Corpus c, final FuzzRunnable d, final boolean l) {
+		super(runnableManager, threadContext);
+
+		corpus = c;
+		cursor = corpus.cursor();
+		delegate = d;
+		loop = l;
+
+		if (!executesSingleSentences(delegate)) {
+			throw new IllegalArgumentException("Unable to replay a corpus with " + delegate.getClass().getName()
+				+ ", as it does not override execute() to run one Sentence at a time. Batch runnables such as"
+				+ " JavaBatchRunnable can not be used for replay.");
+		}
+
+		stride = Math.max(1, threadContext.getGlobalContext().getThreadCount());
+		position = (threadContext.getContextId() - 1) % stride;
+	}
+
+	private static boolean executesSingleSentences(final FuzzRunnable runnable) {
+		try {
+			return runnable.getClass().getMethod("execute", Sentence.class).getDeclaringClass() != FuzzRunnable.class;
+		} catch (NoSuchMethodException noSuchMethodException) {
+			throw new AssertionError(noSuchMethodException);
+		}
+	}
+
+	@Override
+	public final void run() {
+		// The delegate only sees Sentences that have already been generated, so nothing needs to be traced
+		final Sentence<String> sentence = Sentence.newSentence(0, SentenceRandom.newDefault(), TraceLevel.NONE, GenerationBudget.UNLIMITED);
+		final long corpusSize = corpus.size();
+
+		if (delegateFailed()) {
+			return;
+		}
+
+		while (executionCounter < threadContext.getGlobalContext().getCount()) {
+			if (interrupted) {
+				return;
+			}
+
+			if (position >= corpusSize) {
+				if (!loop || corpusSize <= position % stride) {
+					return;
+				}
+
+				position = position % stride;
+			}
+
+			ByteBuffer record = cursor.seek(corpus.getStartId() + position);
+			sentence.reset(cursor.getId());
+			sentence.append(decode(record));
+			position += stride;
+
+			try {
+				delegate.execute(sentence);
+			} catch (Exception exception) {
+				if (!interrupted) {
+					executionException("Execution exception.", exception, sentence);
+				}
+				return;
+			}
+
+			if (delegateFailed()) {
+				return;
+			}
+
+			executionCounter++;
+		}
+	}
+
+	/**
+	The delegate reports its own failures, which the RunnableManager only looks for in this runnable
+	**/
+
+	private boolean delegateFailed() {
+		if (delegate.getExecutionException() == null && delegate.getRuntimeException() == null) {
+			return false;
+		}
+
+		executionException = delegate.getExecutionException();
+		runtimeException = delegate.getRuntimeException();
+		return true;
+	}
+
+	private CharBuffer decode(final ByteBuffer record) {
+		int maxChars = (int) (record.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+
+		if (chars.capacity() < maxChars) {
+			chars = CharBuffer.allocate(Math.max(maxChars, chars.capacity() * 2));
+		}
+
+		chars.clear();
+		decoder.reset();
+
+		CoderResult result = decoder.decode(record, chars, true);
+		assert !result.isOverflow();
+		decoder.flush(chars);
+
+		chars.flip();
+		return chars;
+	}
+}
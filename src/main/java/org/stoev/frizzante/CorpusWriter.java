@@ -0,0 +1,105 @@
+package org.stoev.frizzante;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes the Sentences of a SentenceRange into a corpus that can be read back with Corpus.
+ *
+ * <p>The range is generated by SentenceRange.forEachChunk(), in chunks of consecutive ids that are encoded in parallel
+ * on a ForkJoinPool. The chunks are appended to the files in id order by the calling thread, so the corpus is the
+ * same no matter how many workers there are, and corpora larger than memory can be written.
+ *
+ * <p>Sentences are generated as by SentenceRange, so a corpus contains the same Sentences as generating the ids
+ * on the fly. The Sentences are only written out, so the GlobalContext can use TraceLevel.NONE.
+**/
+
+public final class CorpusWriter {
+	private CorpusWriter() {
+		assert false;
+	}
+
+	/**
+	Writes the corpus into the given data file and an index file next to it, using one worker per processor
+	**/
+
+	public static <T> void write(final SentenceRange<T> range, final File dataFile) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool();
+
+		try {
+			write(range, dataFile, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	Writes the corpus into the given data file and an index file next to it, generating on the given ForkJoinPool
+	**/
+
+	public static <T> void write(final SentenceRange<T> range, final File dataFile, final ForkJoinPool pool) throws IOException {
+		try (
+			RandomAccessFile dataRandomAccessFile = new RandomAccessFile(dataFile, "rw");
+			RandomAccessFile indexRandomAccessFile = new RandomAccessFile(Corpus.getIndexFile(dataFile), "rw")
+		) {
+			FileChannel dataChannel = dataRandomAccessFile.getChannel();
+			FileChannel indexChannel = indexRandomAccessFile.getChannel();
+
+			dataChannel.truncate(0);
+			indexChannel.truncate(0);
+
+			ByteBuffer dataHeader = ByteBuffer.allocate(Corpus.DATA_HEADER_SIZE);
+			dataHeader.putInt(Corpus.DATA_MAGIC).putInt(Corpus.VERSION);
+			dataHeader.flip();
+			writeFully(dataChannel, dataHeader);
+
+			ByteBuffer indexHeader = ByteBuffer.allocate(Corpus.INDEX_HEADER_SIZE);
+			indexHeader.putInt(Corpus.INDEX_MAGIC).putInt(Corpus.VERSION).putLong(range.getStart()).putLong(range.size());
+			indexHeader.flip();
+			writeFully(indexChannel, indexHeader);
+
+			range.forEachChunk(pool, true, new byte[0], new IndexingConsumer(dataChannel, indexChannel));
+		}
+	}
+
+	/**
+	Appends each chunk to the data file, and the offset of each of its records to the index file
+	**/
+
+	private static final class IndexingConsumer implements SentenceRange.ChunkConsumer {
+		private final FileChannel dataChannel;
+		private final FileChannel indexChannel;
+		private long dataOffset = Corpus.DATA_HEADER_SIZE;
+
+		IndexingConsumer(final FileChannel d, final FileChannel i) {
+			dataChannel = d;
+			indexChannel = i;
+		}
+
+		@Override
+		public boolean accept(final SentenceRange.Chunk chunk) throws IOException {
+			int[] recordOffsets = chunk.getOffsets();
+			ByteBuffer offsets = ByteBuffer.allocate(recordOffsets.length * Corpus.INDEX_ENTRY_SIZE);
+
+			for (int offset: recordOffsets) {
+				offsets.putLong(dataOffset + offset);
+			}
+			offsets.flip();
+
+			dataOffset += chunk.getData().remaining();
+			writeFully(dataChannel, chunk.getData());
+			writeFully(indexChannel, offsets);
+			return true;
+		}
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.stoev.frizzante;
+
+import java.util.Arrays;
+
+/**
+ * The productions used to generate a Sentence, in the order they were entered.
+ *
+ * <p>Each entry is stored as three consecutive ints in a single growable array: the production id,
+ * as numbered by Grammar.compile(), the index of the first element the production generated, and the
+ * index one past the last one. This takes a fraction of the memory of one ProductionInstance object
+ * per entry and is reused when the Sentence is reset.
+**/
+
+final class DerivationTrace {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final int STRIDE = 3;
+	private static final int PRODUCTION_ID = 0;
+	private static final int START = 1;
+	private static final int END = 2;
+
+	private int[] entries = new int[INITIAL_CAPACITY * STRIDE];
+	private int size;
+
+	/**
+	Records the start of a production
+
+	@return a handle to be passed to setEnd()
+	**/
+
+	int add(final int productionId, final int start) {
+		assert productionId >= 0;
+
+		int offset = size * STRIDE;
+
+		if (offset == entries.length) {
+			entries = Arrays.copyOf(entries, entries.length * 2);
+		}
+
+		entries[offset + PRODUCTION_ID] = productionId;
+		entries[offset + START] = start;
+
+		// An end equal to start denotes a production that generated nothing
+		entries[offset + END] = start;
+
+		return size++;
+	}
+
+	void setEnd(final int handle, final int end) {
+		// We store the end + 1 in order to be able to distinguish between productions that produced
+		// something and those that did not (where start = end).
+		entries[handle * STRIDE + END] = end + 1;
+		assert entries[handle * STRIDE + END] >= entries[handle * STRIDE + START];
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	int getProductionId(final int index) {
+		return entries[index * STRIDE + PRODUCTION_ID];
+	}
+
+	int getStart(final int index) {
+		return entries[index * STRIDE + START];
+	}
+
+	int getEnd(final int index) {
+		assert wasProductive(index);
+		return entries[index * STRIDE + END] - 1;
+	}
+
+	boolean wasProductive(final int index) {
+		return entries[index * STRIDE + END] > entries[index * STRIDE + START];
+	}
+}
@@ -0,0 +1,250 @@
+package org.stoev.frizzante;
+
+import java.util.Random;
+
+/**
+ * Picks an index between 0 (inclusive) and a fixed size (exclusive), as used by RandomTerminal.
+ *
+ * <p>Four distributions are available:
+ * <ul>
+ * <li> uniform - every index is equally likely;
+ * <li> zipf=s - index i is picked with a probability proportional to 1 / (i + 1)^s, so the lowest indexes
+ * are the most popular. Sampled by rejection-inversion (Hormann and Derflinger, 1996), which takes
+ * constant time and needs no tables, whatever the size;
+ * <li> gaussian=f - a normal distribution centered on the middle index, with a standard deviation of f times the
+ * size, or one sixth of it if f is not given. Values that fall outside the range are drawn again;
+ * <li> hotspot=f - the first f of the indexes are picked 1 - f of the time, e.g. hotspot=0.2 sends 80% of the
+ * picks to the lowest 20% of the indexes.
+ * </ul>
+ * Distributions are immutable and only draw from the Random they are given, so they can be shared between threads.
+**/
+
+abstract class Distribution {
+	private static final String UNIFORM = "uniform";
+	private static final String ZIPF = "zipf";
+	private static final String GAUSSIAN = "gaussian";
+	private static final String HOTSPOT = "hotspot";
+
+	private static final double DEFAULT_GAUSSIAN_DEVIATION = 1.0d / 6;
+
+	/**
+	Parses a distribution as written in the grammar, e.g. "zipf=0.99"
+	**/
+
+	static Distribution create(final String specification, final long size) {
+		String name = specification;
+		String parameter = null;
+
+		int equalsPosition = specification.indexOf('=');
+
+		if (equalsPosition >= 0) {
+			name = specification.substring(0, equalsPosition);
+			parameter = specification.substring(equalsPosition + 1);
+		}
+
+		if (name.equals(UNIFORM) && parameter == null) {
+			return new Uniform(size);
+		} else if (name.equals(ZIPF) && parameter != null) {
+			return new Zipf(size, parseParameter(specification, parameter, false));
+		} else if (name.equals(GAUSSIAN)) {
+			double deviation = DEFAULT_GAUSSIAN_DEVIATION;
+
+			if (parameter != null) {
+				deviation = parseParameter(specification, parameter, false);
+			}
+
+			return new Gaussian(size, deviation);
+		} else if (name.equals(HOTSPOT) && parameter != null) {
+			return new Hotspot(size, parseParameter(specification, parameter, true));
+		} else {
+			throw new IllegalArgumentException("Unknown distribution " + specification);
+		}
+	}
+
+	static Distribution uniform(final long size) {
+		return new Uniform(size);
+	}
+
+	private static double parseParameter(final String specification, final String parameter, final boolean fraction) {
+		final double value;
+
+		try {
+			value = Double.parseDouble(parameter);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid parameter in distribution " + specification, e);
+		}
+
+		if (!(value > 0) || Double.isInfinite(value) || (fraction && value >= 1)) {
+			throw new IllegalArgumentException("Parameter out of range in distribution " + specification);
+		}
+
+		return value;
+	}
+
+	abstract long next(Random random);
+
+	/**
+	Returns a uniformly distributed long between 0 (inclusive) and bound (exclusive), without modulo bias
+	**/
+
+	static long nextLong(final Random random, final long bound) {
+		assert bound > 0;
+
+		long bits;
+		long value;
+
+		do {
+			bits = random.nextLong() >>> 1;
+			value = bits % bound;
+		} while (bits - value + (bound - 1) < 0);
+
+		return value;
+	}
+
+	/**
+	Returns a normally distributed double with a mean of 0 and a standard deviation of 1, using the Box-Muller
+	transform. Unlike Random.nextGaussian(), no spare value is kept for the next call, so the result depends only
+	on the state of the generator, and no lock is taken.
+	**/
+
+	static double nextGaussian(final Random random) {
+		// 1 - nextDouble() is never 0, so the logarithm is finite
+		final double radius = Math.sqrt(-2 * Math.log(1 - random.nextDouble()));
+		return radius * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+
+	private static final class Uniform extends Distribution {
+		private final long size;
+		Uniform(final long s) {
+			assert s > 0;
+			size = s;
+		}
+
+		@Override
+		long next(final Random random) {
+			return nextLong(random, size);
+		}
+	}
+
+	private static final class Zipf extends Distribution {
+		private final long size;
+		private final double exponent;
+		private final double hIntegralX1;
+		private final double hIntegralSize;
+		private final double threshold;
+
+		Zipf(final long s, final double e) {
+			assert s > 0;
+			size = s;
+			exponent = e;
+
+			hIntegralX1 = hIntegral(1.5d) - 1d;
+			hIntegralSize = hIntegral(size + 0.5d);
+			threshold = 2d - hIntegralInverse(hIntegral(2.5d) - h(2d));
+		}
+
+		@Override
+		long next(final Random random) {
+			while (true) {
+				final double u = hIntegralSize + random.nextDouble() * (hIntegralX1 - hIntegralSize);
+				final double x = hIntegralInverse(u);
+
+				long k = (long) (x + 0.5d);
+
+				if (k < 1) {
+					k = 1;
+				} else if (k > size) {
+					k = size;
+				}
+
+				if (k - x <= threshold || u >= hIntegral(k + 0.5d) - h(k)) {
+					return k - 1;
+				}
+			}
+		}
+
+		private double h(final double x) {
+			return Math.exp(-exponent * Math.log(x));
+		}
+
+		private double hIntegral(final double x) {
+			final double logX = Math.log(x);
+			return helper2((1d - exponent) * logX) * logX;
+		}
+
+		private double hIntegralInverse(final double x) {
+			double t = x * (1d - exponent);
+
+			if (t < -1d) {
+				// Limits the value to the domain of log1p(), which rounding errors may otherwise leave
+				t = -1d;
+			}
+
+			return Math.exp(helper1(t) * x);
+		}
+
+		// log1p(x) / x, and its Taylor expansion near zero, where the division would lose precision
+		private static double helper1(final double x) {
+			if (Math.abs(x) > 1e-8) {
+				return Math.log1p(x) / x;
+			} else {
+				return 1d - x * (0.5d - x * (1d / 3d - 0.25d * x));
+			}
+		}
+
+		// expm1(x) / x, likewise
+		private static double helper2(final double x) {
+			if (Math.abs(x) > 1e-8) {
+				return Math.expm1(x) / x;
+			} else {
+				return 1d + x * 0.5d * (1d + x * 1d / 3d * (1d + 0.25d * x));
+			}
+		}
+	}
+
+	private static final class Gaussian extends Distribution {
+		private final long size;
+		private final double mean;
+		private final double deviation;
+
+		Gaussian(final long s, final double d) {
+			assert s > 0;
+			size = s;
+			mean = (size - 1) / 2.0d;
+			deviation = d * size;
+		}
+
+		@Override
+		long next(final Random random) {
+			while (true) {
+				final long value = Math.round(mean + nextGaussian(random) * deviation);
+
+				if (value >= 0 && value < size) {
+					return value;
+				}
+			}
+		}
+	}
+
+	private static final class Hotspot extends Distribution {
+		private final long size;
+		private final long hotSize;
+		private final double hotProbability;
+
+		Hotspot(final long s, final double fraction) {
+			assert s > 0;
+			size = s;
+			hotSize = Math.max(1, (long) Math.ceil(fraction * size));
+			hotProbability = 1 - fraction;
+		}
+
+		@Override
+		long next(final Random random) {
+			if (hotSize == size || random.nextDouble() < hotProbability) {
+				return nextLong(random, hotSize);
+			} else {
+				return hotSize + nextLong(random, size - hotSize);
+			}
+		}
+	}
+}
@@ -20,26 +20,43 @@ public abstract class FuzzRunnable implements Runnable {
 
 	@SuppressWarnings("checkstyle:designforextension")
 	public void run() {
-		while (executionCounter < threadContext.getGlobalContext().getCount()) {
-			if (interrupted) {
-				return;
-			}
+		run(threadContext);
+	}
 
-			Sentence<?> sentence = threadContext.generateSentence();
+	private <T> void run(final ThreadContext<T> context) {
+		// The same Sentence object is reused for all executions in order to avoid allocations
+		final Sentence<T> sentence = context.newSentence();
 
-			try {
-				execute(sentence);
-			} catch (Exception executionException) {
-				if (!interrupted) {
-					executionException("Execution exception.", executionException, sentence);
+		try {
+			while (executionCounter < context.getGlobalContext().getCount()) {
+				if (interrupted) {
+					return;
 				}
-				return;
-			}
 
-			executionCounter++;
+				context.generateInto(sentence);
+
+				try {
+					execute(sentence);
+				} catch (Exception executionException) {
+					if (!interrupted) {
+						executionException("Execution exception.", executionException, sentence);
+					}
+					return;
+				}
+
+				executionCounter++;
+			}
+		} finally {
+			// Feedback that has not reached the merge interval would otherwise be lost
+			context.mergeWeights();
 		}
 	}
 
+	/**
+	Executes a single Sentence. The Sentence object is reused for the next execution,
+	so implementations should not hold on to it after returning.
+	**/
+
 	@SuppressWarnings("checkstyle:designforextension")
 	public void execute(final Sentence<?> sentence) {
 		throw new IllegalArgumentException("You need to override execute() in FuzzRunnable.");
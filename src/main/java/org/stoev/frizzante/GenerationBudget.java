@@ -0,0 +1,75 @@
+package org.stoev.frizzante;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the size of each Sentence generated in a GlobalContext.
+ *
+ * <p>Once a Sentence is nested deeper than maxDepth productions, or has more than maxElements elements or
+ * maxBytes bytes, every rule that is expanded picks the production that starts its shortest terminating
+ * derivation instead of a random one, so the Sentence is brought to an end as quickly as possible.
+ * The depth limit applies again once the Sentence has returned from the deep productions, while the other
+ * two limits apply until the end of the Sentence.
+ *
+ * <p>Bytes are counted as UTF-8 for grammar literals and as chars for other Strings, so Java code that
+ * produces multi-byte characters may take a Sentence a bit past maxBytes.
+ *
+ * <p>Each such forced pick is counted against the rule, so that grammars that tend to explode can be found.
+**/
+
+final class GenerationBudget {
+	static final GenerationBudget UNLIMITED = new GenerationBudget(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	private final int maxDepth;
+	private final int maxElements;
+	private final int maxBytes;
+
+	private final ConcurrentMap<String, AtomicLong> hits = new ConcurrentHashMap<String, AtomicLong>();
+
+	GenerationBudget(final int d, final int e, final int b) {
+		if (d < 0 || e < 0 || b < 0) {
+			throw new IllegalArgumentException("Generation limits can not be negative.");
+		}
+
+		maxDepth = d;
+		maxElements = e;
+		maxBytes = b;
+	}
+
+	boolean isExceeded(final int depth, final int elements, final int bytes) {
+		return depth > maxDepth || elements > maxElements || bytes > maxBytes;
+	}
+
+	void recordHit(final String ruleName) {
+		AtomicLong counter = hits.get(ruleName);
+
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = hits.putIfAbsent(ruleName, newCounter);
+
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+
+		counter.incrementAndGet();
+	}
+
+	/**
+	Returns the number of forced picks so far for each rule that had any, sorted by rule name
+	**/
+
+	Map<String, Long> getHits() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+
+		for (Map.Entry<String, AtomicLong> entry: hits.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+
+		return result;
+	}
+}
@@ -1,5 +1,6 @@
 package org.stoev.frizzante;
 
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 
@@ -12,11 +13,16 @@ public final class GlobalContext<T> {
 
 	private final Random random;
 	private final Long randomSeed;
+	private final SentenceRandom sentenceRandom;
+	private final TraceLevel traceLevel;
+	private final GenerationBudget budget;
+	private final int weightMergeInterval;
 
 	private final Object visitor;
 
 	private final long idRangeStart;
 	private final long idRangeLength;
+	private final IdPermutation idPermutation;
 
 	private FuzzRunnableFactory runnableFactory;
 	private int threadCount;
@@ -28,11 +34,22 @@ public final class GlobalContext<T> {
 
 		random = builder.random;
 		randomSeed = builder.randomSeed;
+		sentenceRandom = builder.sentenceRandom;
+		traceLevel = builder.traceLevel;
+		budget = new GenerationBudget(builder.maxDepth, builder.maxElements, builder.maxBytes);
+		weightMergeInterval = builder.weightMergeInterval;
 		visitor = builder.visitor;
 
 		idRangeStart = builder.idRangeStart;
 		idRangeLength = builder.idRangeLength;
 
+		if (builder.idMode == IdMode.PERMUTED) {
+			// The key is only drawn in this mode, so that the thread seeds of the RANDOM mode stay the same
+			idPermutation = new IdPermutation(idRangeStart, Math.min(idRangeLength + 1, Long.MAX_VALUE - idRangeStart), random.nextLong());
+		} else {
+			idPermutation = null;
+		}
+
 		runnableFactory = builder.runnableFactory;
 		threadCount = builder.threadCount;
 		duration = builder.duration;
@@ -41,20 +58,32 @@ public final class GlobalContext<T> {
 		if (grammar != null && visitor != null) {
 			grammar.registerVisitor(visitor);
 		}
+
+		if (grammar != null && builder.jit) {
+			grammar.enableJit();
+		}
 	}
 
 	public static final class ContextBuilder<T> {
 		private Grammar<T> grammar;
 		private Long randomSeed = Long.valueOf(1L);
 		private Random random = new Random(randomSeed);
+		private SentenceRandom sentenceRandom = SentenceRandom.newDefault();
+		private TraceLevel traceLevel = TraceLevel.FULL;
+		private int maxDepth = Integer.MAX_VALUE;
+		private int maxElements = Integer.MAX_VALUE;
+		private int maxBytes = Integer.MAX_VALUE;
+		private int weightMergeInterval = 1;
 		private Object visitor;
 		private long idRangeStart = 0;
 		private long idRangeLength = Long.MAX_VALUE - 1;
+		private IdMode idMode = IdMode.RANDOM;
 
 		private FuzzRunnableFactory runnableFactory = null;
 		private int threadCount = 1;
 		private int duration = Integer.MAX_VALUE;
 		private long count = Long.MAX_VALUE;
+		private boolean jit = false;
 
 		public ContextBuilder<T> grammar(final Grammar<T> gr) {
 			this.grammar = gr;
@@ -92,6 +121,72 @@ public final class GlobalContext<T> {
 			return this;
 		}
 
+		/**
+		Selects the kind of random number generator used for each Sentence. Sentences get
+		their own generator via newInstance(), so the object passed here is only a prototype.
+		Use SentenceRandom.newLegacy() to reproduce sentence ids from previous versions.
+		**/
+
+		public ContextBuilder<T> sentenceRandom(final SentenceRandom prototype) {
+			this.sentenceRandom = prototype;
+			return this;
+		}
+
+		/**
+		Selects how much of the derivation of each Sentence is recorded. Load tests that
+		never call failed(), succeeded() or simplify Sentences can use TraceLevel.NONE.
+		**/
+
+		public ContextBuilder<T> tracing(final TraceLevel level) {
+			this.traceLevel = level;
+			return this;
+		}
+
+		/**
+		Limits how deeply productions can be nested in a Sentence. Past the limit, each rule picks the
+		production that leads to its shortest terminating derivation, so recursive grammars can not
+		overflow the stack. See getBudgetHits() for how often this happened.
+		**/
+
+		public ContextBuilder<T> maxDepth(final int depth) {
+			this.maxDepth = depth;
+			return this;
+		}
+
+		/**
+		Limits the number of elements in a Sentence, in the same way as maxDepth()
+		**/
+
+		public ContextBuilder<T> maxElements(final int elements) {
+			this.maxElements = elements;
+			return this;
+		}
+
+		/**
+		Limits the length of a Sentence in bytes, in the same way as maxDepth()
+		**/
+
+		public ContextBuilder<T> maxBytes(final int bytes) {
+			this.maxBytes = bytes;
+			return this;
+		}
+
+		/**
+		Sets how many failed() or succeeded() calls each thread accumulates before merging them into the
+		weights shared by all threads. The default of 1 merges each call right away, while larger values
+		make merging cheaper when many threads provide feedback at the same time. Either way, a rule picks
+		with its new weights within as many picks as it has productions.
+		**/
+
+		public ContextBuilder<T> weightMergeInterval(final int interval) {
+			if (interval < 1) {
+				throw new IllegalArgumentException("Weight merge interval must be at least 1.");
+			}
+
+			this.weightMergeInterval = interval;
+			return this;
+		}
+
 		public ContextBuilder<T> visitor(final Object v) {
 			this.visitor = v;
 			return this;
@@ -103,6 +198,16 @@ public final class GlobalContext<T> {
 			return this;
 		}
 
+		/**
+		Selects how the ids of new Sentences are picked from the range. IdMode.PERMUTED gives each thread
+		its own slice of a shuffled range, so that no two Sentences have the same id until the range runs out.
+		**/
+
+		public ContextBuilder<T> idMode(final IdMode mode) {
+			this.idMode = mode;
+			return this;
+		}
+
 		public ContextBuilder<T> runnableFactory(final FuzzRunnableFactory runnableFactory) {
 			this.runnableFactory = runnableFactory;
 			return this;
@@ -123,13 +228,24 @@ public final class GlobalContext<T> {
 			return this;
 		}
 
+		/**
+		Compiles the grammar into Java code for faster generation. The generated Sentences are
+		the same as in the default interpreted mode. Compilation takes a second or so, so this is
+		only worth it for long-running tests.
+		**/
+
+		public ContextBuilder<T> jit(final boolean enabled) {
+			this.jit = enabled;
+			return this;
+		}
+
 		public GlobalContext<T> build() {
 			return new GlobalContext<T>(this);
 		}
 	}
 
 	public Sentence<T> sentenceFromId(final long id) {
-		Sentence<T> sentence = Sentence.newSentence(id);
+		Sentence<T> sentence = Sentence.newSentence(id, sentenceRandom.newInstance(), traceLevel, budget);
 		return sentence;
 	}
 
@@ -143,6 +259,32 @@ public final class GlobalContext<T> {
                 return threadContext;
         }
 
+	/**
+	Returns the Sentences for every id in the range set by idRange(), which can be generated
+	in parallel via parallelForEach()
+	**/
+
+	public SentenceRange<T> sentences() {
+		return new SentenceRange<T>(this, idRangeStart, Math.min(idRangeLength + 1, Long.MAX_VALUE - idRangeStart));
+	}
+
+	/**
+	Returns the Sentences for the given number of ids, starting with the given id
+	**/
+
+	public SentenceRange<T> sentences(final long start, final long sentenceCount) {
+		return new SentenceRange<T>(this, start, sentenceCount);
+	}
+
+	/**
+	Returns, for each rule, the number of times it had to pick its shortest production because a Sentence
+	ran over the limits set by maxDepth(), maxElements() or maxBytes()
+	**/
+
+	public Map<String, Long> getBudgetHits() {
+		return budget.getHits();
+	}
+
 	public void run() throws Exception {
 		if (runnableFactory == null) {
 			throw new IllegalArgumentException("Global context has no runnable, so can not call run() on it.");
@@ -163,9 +305,12 @@ public final class GlobalContext<T> {
 		sb.append(randomSeed);
 		sb.append("\n");
 
-		sb.append("Grammar:\n");
-		sb.append(grammar.toString());
-		sb.append("\n");
+		// Replaying a corpus needs no grammar
+		if (grammar != null) {
+			sb.append("Grammar:\n");
+			sb.append(grammar.toString());
+			sb.append("\n");
+		}
 
 		return sb.toString();
 	}
@@ -178,6 +323,14 @@ public final class GlobalContext<T> {
 		return idRangeLength;
 	}
 
+	/**
+	Returns the permutation of the id range, or null if ids are picked at random
+	**/
+
+	IdPermutation getIdPermutation() {
+		return idPermutation;
+	}
+
 	FuzzRunnableFactory getRunnableFactory() {
 		return runnableFactory;
 	}
@@ -198,6 +351,10 @@ public final class GlobalContext<T> {
 		return grammar;
 	}
 
+	int getWeightMergeInterval() {
+		return weightMergeInterval;
+	}
+
 	Object getVisitor() {
 		return visitor;
 	}
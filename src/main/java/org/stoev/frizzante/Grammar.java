@@ -4,6 +4,14 @@ import java.util.regex.Pattern;
 import java.util.Scanner;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.ArrayList;
 import java.util.Set;
 import java.util.EnumSet;
 
@@ -14,14 +22,24 @@ import java.lang.reflect.Method;
 
 import org.stoev.frizzante.Grammar.GrammarOptions;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public final class Grammar<T> implements Generatable<T> {
 
 	static enum GrammarOptions {
 		STANDALONE_SEMICOLONS,
 		SKIP_WHITESPACE,
-		TRAILING_PIPES
+		TRAILING_PIPES,
+		NO_FOLDING,
+		NO_INLINING,
+		REPETITION,
+		RANDOM_TERMINALS,
+		VALUE_POOLS
 	};
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(Grammar.class);
+
 	private static final String STARTING_GRAMMAR_RULE = "main";
 
 	private static final String ANY_STRING = ".*?";
@@ -33,12 +51,19 @@ public final class Grammar<T> implements Generatable<T> {
 	private static final Pattern JAVA_PATTERN = Pattern.compile(JAVA_DOUBLE_OPENING_BRACES + ANY_STRING + JAVA_DOUBLE_CLOSING_BRACES_SEMICOLON_EOL + Constants.OPTIONAL_WHITESPACE, Pattern.DOTALL);
 	private static final String RULE_NAME_PATTERN = "[a-zA-Z0-9_. ]*:";
 	private static final String JAVA_EXTENSION = ".java";
+	private static final String CACHED_EXTENSION = "_cached";
 
 	private File file;
 	private final Set<GrammarOptions> options = EnumSet.noneOf(GrammarOptions.class);
 
 	private final Map<String, Generatable<T>> rules = new HashMap<String, Generatable<T>>();
-	private final Map<String, Boolean> shouldCacheRule = new HashMap<String, Boolean>();
+	private final Map<String, Integer> cacheSlots = new HashMap<String, Integer>();
+	private final Map<String, ValuePool<T>> valuePools = new HashMap<String, ValuePool<T>>();
+	private final List<GrammarProduction<T>> productions = new ArrayList<GrammarProduction<T>>();
+
+	private GrammarProgram<T> program;
+	private boolean jitEnabled;
+	private JitGrammar<T> jitGrammar;
 
 	Grammar(final File file) throws FileNotFoundException {
 		this(new Scanner(file, "UTF-8"));
@@ -47,6 +72,9 @@ public final class Grammar<T> implements Generatable<T> {
 
 	Grammar(final Scanner scanner) {
 		parse(scanner);
+
+		// Compiled only once all #include files have been parsed, so that it is known which rules main reaches
+		compile(this);
 	}
 
 
@@ -129,29 +157,350 @@ public final class Grammar<T> implements Generatable<T> {
 					throw new IllegalArgumentException("Unable to parse rule " + generatableName + " (missing ';' terminator?)");
 				}
 
-				generatableObject = new GrammarRule<T>(generatableName, ruleString, options);
+				GrammarRule<T> rule = new GrammarRule<T>(generatableName, ruleString, options);
+				addSynthesizedRules(rule);
+				generatableObject = rule;
 			}
 
 			rules.put(generatableName, generatableObject);
 		}
+	}
 
-		compile(this);
+	/**
+	Creates a GrammarRepetition, RandomTerminal or PooledValue for each such element of the rule that has not been seen before.
+	They are kept among the rules under the text of the element, so that productions resolve them like any rule.
+	**/
+
+	private void addSynthesizedRules(final GrammarRule<T> rule) {
+		for (GrammarProduction<T> production : rule.getProductions()) {
+			for (Generatable<T> element : production.getSourceElements()) {
+				String elementName = element.getName();
+
+				if (rules.containsKey(elementName)) {
+					continue;
+				}
+
+				if (options.contains(GrammarOptions.REPETITION) && GrammarRepetition.isRepetition(elementName)) {
+					rules.put(elementName, new GrammarRepetition<T>(elementName, options));
+				} else if (options.contains(GrammarOptions.RANDOM_TERMINALS) && RandomTerminal.isTerminal(elementName)) {
+					rules.put(elementName, new RandomTerminal<T>(elementName));
+				} else if (options.contains(GrammarOptions.VALUE_POOLS) && PooledValue.isPooledValue(elementName)) {
+					rules.put(elementName, new PooledValue<T>(elementName));
+				}
+			}
+		}
 	}
 
 	public void compile(final Grammar<T> grammar) {
-		for (Generatable<T> rule : rules.values()) {
+		Collection<Generatable<T>> reachableRules = findReachableRules();
+
+		if (reachableRules.size() < rules.size()) {
+			LOGGER.debug("Skipping {} rules that can not be reached from {}.", rules.size() - reachableRules.size(), STARTING_GRAMMAR_RULE);
+		}
+
+		compileInlineJava(reachableRules);
+		compileVisitors(reachableRules);
+
+		for (Generatable<T> rule : reachableRules) {
 			rule.compile(grammar);
 		}
+
+		assignCacheSlots();
+		bindValuePools(reachableRules);
+
+		boolean folding = !options.contains(GrammarOptions.NO_FOLDING);
+		boolean inlining = !options.contains(GrammarOptions.NO_INLINING);
+
+		if (folding || inlining) {
+			foldConstants(reachableRules, folding, inlining);
+		}
+
+		numberProductions(reachableRules);
+		ShortestDerivations.compute(getGrammarRules(reachableRules));
+		buildProgram();
 	}
 
-	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+	/**
+	Returns the rules that can be reached from main, or all rules if there is no main, e.g. in an #include file.
+	Unreachable rules are never compiled, so inline Java code that is never used does not need to go through javac.
+	**/
+
+	private Collection<Generatable<T>> findReachableRules() {
+		Generatable<T> startingRule = rules.get(STARTING_GRAMMAR_RULE);
+
+		if (startingRule == null) {
+			return rules.values();
+		}
+
+		Set<Generatable<T>> reachableRules = Collections.newSetFromMap(new IdentityHashMap<Generatable<T>, Boolean>());
+		Deque<Generatable<T>> pendingRules = new ArrayDeque<Generatable<T>>();
+
+		reachableRules.add(startingRule);
+		pendingRules.add(startingRule);
+
+		while (!pendingRules.isEmpty()) {
+			Generatable<T> rule = pendingRules.removeFirst();
+
+			for (Generatable<T> reference : getReferences(rule)) {
+				if (reachableRules.add(reference)) {
+					pendingRules.addLast(reference);
+				}
+			}
+		}
+
+		// Keep the order of the rules map, so that compiling a grammar is deterministic
+
+		List<Generatable<T>> orderedRules = new ArrayList<Generatable<T>>(reachableRules.size());
+
+		for (Generatable<T> rule : rules.values()) {
+			if (reachableRules.contains(rule)) {
+				orderedRules.add(rule);
+			}
+		}
+
+		return orderedRules;
+	}
+
+	private List<Generatable<T>> getReferences(final Generatable<T> rule) {
+		List<Generatable<T>> references = new ArrayList<Generatable<T>>();
+
+		if (rule instanceof GrammarRule) {
+			for (GrammarProduction<T> production : ((GrammarRule<T>) rule).getProductions()) {
+				for (Generatable<T> element : production.getSourceElements()) {
+					Generatable<T> reference = resolveReference(element);
+
+					if (reference != null) {
+						references.add(reference);
+					}
+				}
+			}
+		} else if (rule instanceof JavaVisitor) {
+			Generatable<T> argument = ((JavaVisitor<T>) rule).getArgument();
+
+			if (argument != null) {
+				references.add(argument);
+			}
+		} else if (rule instanceof PooledValue) {
+			Generatable<T> pooledRule = rules.get(((PooledValue<T>) rule).getRuleName());
+
+			if (pooledRule != null) {
+				references.add(pooledRule);
+			}
+		}
+
+		return references;
+	}
+
+	/**
+	Finds the rule a production element refers to, in the same way GrammarProduction.compile() does,
+	whether or not the production has already been compiled
+	**/
+
+	private Generatable<T> resolveReference(final Generatable<T> element) {
+		if (element instanceof GrammarLiteral || element instanceof GrammarRule || element instanceof CachedValue) {
+			String ruleName = element.getName();
+
+			if (ruleName.endsWith(CACHED_EXTENSION)) {
+				ruleName = ruleName.substring(0, ruleName.length() - CACHED_EXTENSION.length());
+			}
+
+			return rules.get(ruleName);
+		} else {
+			return element;
+		}
+	}
+
+	/**
+	Compiles the Java code of all reachable inline Java rules with a single javac run
+	**/
+
+	private void compileInlineJava(final Collection<Generatable<T>> reachableRules) {
+		List<InlineJava<T>> inlineJavas = new ArrayList<InlineJava<T>>();
+
+		for (Generatable<T> rule : reachableRules) {
+			if (rule instanceof InlineJava) {
+				inlineJavas.add((InlineJava<T>) rule);
+			}
+		}
+
+		InlineJava.compileAll(inlineJavas);
+	}
+
+	/**
+	Generates the adapters of all reachable visitors with a single javac run
+	**/
+
+	private void compileVisitors(final Collection<Generatable<T>> reachableRules) {
+		List<JavaVisitor<T>> javaVisitors = new ArrayList<JavaVisitor<T>>();
+
+		for (Generatable<T> rule : reachableRules) {
+			if (rule instanceof JavaVisitor) {
+				javaVisitors.add((JavaVisitor<T>) rule);
+			}
+		}
+
+		JavaVisitor.compileAll(javaVisitors);
+	}
+
+	/**
+	Gives each $publish and $sample element the pool of its rule. The pools are kept when the grammar is recompiled,
+	e.g. after a visitor has been registered, so values published so far are not lost.
+	**/
+
+	private void bindValuePools(final Collection<Generatable<T>> reachableRules) {
+		List<PooledValue<T>> pooledValues = new ArrayList<PooledValue<T>>();
+		Set<String> publishedRules = new HashSet<String>();
+		Map<String, Integer> capacities = new HashMap<String, Integer>();
+
+		for (Generatable<T> rule : reachableRules) {
+			if (rule instanceof PooledValue) {
+				PooledValue<T> pooledValue = (PooledValue<T>) rule;
+				String ruleName = pooledValue.getRuleName();
+				pooledValues.add(pooledValue);
+
+				if (pooledValue.isPublishing()) {
+					publishedRules.add(ruleName);
+				}
+
+				if (pooledValue.getCapacity() != -1) {
+					Integer capacity = capacities.get(ruleName);
+
+					if (capacity != null && capacity != pooledValue.getCapacity()) {
+						throw new IllegalArgumentException("Pool " + ruleName + " is given different capacities.");
+					}
+
+					capacities.put(ruleName, pooledValue.getCapacity());
+				}
+			}
+		}
+
+		for (PooledValue<T> pooledValue : pooledValues) {
+			String ruleName = pooledValue.getRuleName();
+
+			if (!publishedRules.contains(ruleName)) {
+				throw new IllegalArgumentException("Pool " + ruleName + " is sampled by " + pooledValue + " but never published.");
+			}
+
+			int capacity = ValuePool.DEFAULT_CAPACITY;
+
+			if (capacities.containsKey(ruleName)) {
+				capacity = capacities.get(ruleName);
+			}
+
+			ValuePool<T> pool = valuePools.get(ruleName);
+
+			if (pool == null || pool.getCapacity() != capacity) {
+				pool = new ValuePool<T>(ruleName, capacity);
+				valuePools.put(ruleName, pool);
+			}
+
+			pooledValue.setPool(pool);
+		}
+	}
+
+	ValuePool<T> getValuePool(final String ruleName) {
+		return valuePools.get(ruleName);
+	}
+
+	private List<GrammarRule<T>> getGrammarRules(final Collection<Generatable<T>> reachableRules) {
+		List<GrammarRule<T>> grammarRules = new ArrayList<GrammarRule<T>>();
+
+		for (Generatable<T> rule : reachableRules) {
+			if (rule instanceof GrammarRule) {
+				grammarRules.add((GrammarRule<T>) rule);
+			}
+		}
+
+		return grammarRules;
+	}
+
+	private void foldConstants(final Collection<Generatable<T>> reachableRules, final boolean folding, final boolean inlining) {
+		ConstantFolder<T> folder = new ConstantFolder<T>(folding, inlining);
+		int productionCount = 0;
+
+		for (Generatable<T> rule : reachableRules) {
+			// Repetitions keep their elements as they are, so that GrammarProgram can turn them into loops
+			if (rule instanceof GrammarRule && !(rule instanceof GrammarRepetition)) {
+				for (GrammarProduction<T> production : ((GrammarRule<T>) rule).getProductions()) {
+					folder.fold(production);
+					productionCount++;
+				}
+			}
+		}
+
+		if (productionCount > 0) {
+			LOGGER.debug("Constant folding reduced {} elements to {} in {} productions ({} per production on average).",
+				folder.getElementsBefore(), folder.getElementsAfter(), productionCount,
+				String.format("%.2f", (double) (folder.getElementsBefore() - folder.getElementsAfter()) / productionCount));
+		}
+	}
+
+	/**
+	Numbers all productions densely, so that Sentences can record their derivation as plain ints
+	**/
+
+	private void numberProductions(final Collection<Generatable<T>> reachableRules) {
+		productions.clear();
+
+		for (Generatable<T> rule : reachableRules) {
+			if (rule instanceof GrammarRule) {
+				for (GrammarProduction<T> production : ((GrammarRule<T>) rule).getProductions()) {
+					production.setId(productions.size());
+					productions.add(production);
+				}
+			}
+		}
+	}
+
+	GrammarProduction<T> getProduction(final int productionId) {
+		return productions.get(productionId);
+	}
+
+	int getProductionCount() {
+		return productions.size();
+	}
+
+	private void buildProgram() {
 		Generatable<T> startingRule = rules.get(STARTING_GRAMMAR_RULE);
 
 		if (startingRule == null) {
+			// This may be an #include file, or the grammar is broken, which will be reported during generation
+			program = null;
+			jitGrammar = null;
+		} else {
+			program = GrammarProgram.compile(startingRule);
+
+			if (jitEnabled) {
+				jitGrammar = GrammarJitCompiler.compile(program);
+			}
+		}
+	}
+
+	/**
+	Generates Java code for the entire grammar and uses it in place of the interpreter from now on
+	**/
+
+	void enableJit() {
+		if (!jitEnabled) {
+			jitEnabled = true;
+			buildProgram();
+		}
+	}
+
+	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		if (program == null) {
 			throw new IllegalArgumentException("Grammar does not have a starting grammar rule named " + STARTING_GRAMMAR_RULE);
 		}
 
-		sentence.pushGeneratable(startingRule);
+		if (jitGrammar != null) {
+			jitGrammar.generate(threadContext, sentence);
+		} else {
+			program.execute(threadContext, sentence);
+		}
+	}
+
+	GrammarProgram<T> getProgram() {
+		return program;
 	}
 
 	void registerVisitor(final Object visitor) {
@@ -173,12 +522,47 @@ public final class Grammar<T> implements Generatable<T> {
 		return rules.get(ruleName);
 	}
 
-	void setRuleCached(final String ruleName) {
-		shouldCacheRule.put(ruleName, true);
+	/**
+	Marks the rule as cached, as a reference to ruleName_cached has been found
+
+	@return the slot that holds the value of the rule in ThreadContext
+	**/
+
+	int setRuleCached(final String ruleName) {
+		Integer cacheSlot = cacheSlots.get(ruleName);
+
+		if (cacheSlot == null) {
+			cacheSlot = cacheSlots.size();
+			cacheSlots.put(ruleName, cacheSlot);
+		}
+
+		return cacheSlot;
+	}
+
+	int getCacheSlotCount() {
+		return cacheSlots.size();
 	}
 
-	boolean shouldCacheRule(final String ruleName) {
-		return shouldCacheRule.containsKey(ruleName);
+	/**
+	Stores the cache slot in the rules themselves, so that generating a rule does not involve a lookup by name.
+	Only possible once all productions have been compiled, as any of them may refer to a rule as _cached.
+	**/
+
+	private void assignCacheSlots() {
+		for (Map.Entry<String, Generatable<T>> entry : rules.entrySet()) {
+			Integer cacheSlot = cacheSlots.get(entry.getKey());
+			int slot = -1;
+
+			if (cacheSlot != null) {
+				slot = cacheSlot;
+			}
+
+			if (entry.getValue() instanceof GrammarRule) {
+				((GrammarRule<T>) entry.getValue()).setCacheSlot(slot);
+			} else if (entry.getValue() instanceof InlineJava) {
+				((InlineJava<T>) entry.getValue()).setCacheSlot(slot);
+			}
+		}
 	}
 
 	public String toString() {
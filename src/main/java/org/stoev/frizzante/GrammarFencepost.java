@@ -1,14 +1,14 @@
 package org.stoev.frizzante;
 
 class GrammarFencepost<T> implements Generatable<T> {
-	private final ProductionInstance<T> productionInstance;
+	private final int traceHandle;
 
-	GrammarFencepost(final ProductionInstance<T> p) {
-		productionInstance = p;
+	GrammarFencepost(final int h) {
+		traceHandle = h;
 	}
 
 	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
-		sentence.leaveProduction(productionInstance);
+		sentence.leaveProduction(traceHandle);
 	}
 
 	public String toString() {
@@ -0,0 +1,262 @@
+package org.stoev.frizzante;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Translates a GrammarProgram into Java source, with one method per rule and a switch over the
+ * picked production, and compiles it into a JitGrammar via JavaBatchCompiler.
+ *
+ * <p>Random choices and production bookkeeping go through the same GrammarProgram methods the
+ * interpreter uses, so the output for a given sentence id is identical. The following are left
+ * to the interpreter:
+ * <ul>
+ * <li> InlineJava, JavaVisitor and cached values, which are invoked as in the interpreter;
+ * <li> rules that are too large to be compiled by HotSpot as a single method;
+ * <li> rules that contain instructions that the translator does not know about;
+ * <li> recursion deeper than MAX_DEPTH, so that the Java stack can not overflow.
+ * </ul>
+**/
+
+final class GrammarJitCompiler<T> {
+	static final int MAX_DEPTH = 512;
+
+	// HotSpot will not JIT-compile methods whose bytecode is larger than 8000 bytes. The estimates below are
+	// taken from javac output, rounded up, with some room left for what they do not account for.
+	private static final int MAX_RULE_BYTECODE = 7000;
+
+	// The depth guard, the switch over the productions and its default case
+	private static final int RULE_BYTECODE = 64;
+
+	// The tableswitch entry and the break of each production
+	private static final int CASE_BYTECODE = 8;
+
+	// A literal(), callCached() or external() helper call, or a call to another rule
+	private static final int CALL_BYTECODE = 10;
+
+	// enter() and storing the handle, or leave()
+	private static final int ENTER_BYTECODE = 12;
+
+	// The for loop around a repeated element, the repeatCount() call and the separator
+	private static final int LOOP_BYTECODE = 40;
+
+	private static final String CLASS_PREFIX = "JitGrammar";
+	private static final AtomicLong CLASS_COUNTER = new AtomicLong();
+
+	private static final String ARGUMENTS = "(final ThreadContext<Object> t, final Sentence<Object> s";
+
+	private final GrammarProgram<T> program;
+	private final StringBuilder source = new StringBuilder();
+
+	GrammarJitCompiler(final GrammarProgram<T> p) {
+		program = p;
+	}
+
+	static <T> JitGrammar<T> compile(final GrammarProgram<T> program) {
+		GrammarJitCompiler<T> jitCompiler = new GrammarJitCompiler<T>(program);
+		String className = CLASS_PREFIX + CLASS_COUNTER.incrementAndGet();
+
+		JavaBatchCompiler javaCompiler = new JavaBatchCompiler(null, new String[] {
+			"import org.stoev.frizzante.ThreadContext",
+			"import org.stoev.frizzante.Sentence",
+			"import org.stoev.frizzante.JitGrammar"
+		});
+
+		javaCompiler.addJavaClass(className, "extends JitGrammar<Object>", jitCompiler.translate());
+		javaCompiler.compileAll();
+
+		Iterator<Class<?>> classIterator = javaCompiler.iterator();
+		assert classIterator.hasNext();
+
+		return jitCompiler.instantiate(classIterator.next());
+	}
+
+	@SuppressWarnings("unchecked")
+	private JitGrammar<T> instantiate(final Class<?> javaClass) {
+		try {
+			JitGrammar<T> jitGrammar = (JitGrammar<T>) javaClass.getConstructor().newInstance();
+			jitGrammar.bind(program);
+			return jitGrammar;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unable to instantiate JIT-compiled grammar.", e);
+		}
+	}
+
+	String translate() {
+		source.append("@Override\nprotected void generate");
+		source.append(ARGUMENTS);
+		source.append(") {\n");
+		translateBlock(GrammarProgram.ENTRY_ADDRESS, "0");
+		source.append("}\n");
+
+		for (int ruleId = 0; ruleId < program.getRuleCount(); ruleId++) {
+			translateRule(ruleId);
+		}
+
+		return source.toString();
+	}
+
+	private void translateRule(final int ruleId) {
+		source.append("private void r");
+		source.append(ruleId);
+		source.append(ARGUMENTS);
+		source.append(", final int d) {\n");
+
+		if (!isTranslatable(ruleId)) {
+			appendInterpret(ruleId);
+		} else {
+			source.append("if (d > ");
+			source.append(MAX_DEPTH);
+			source.append(") {\n");
+			appendInterpret(ruleId);
+			source.append("return;\n}\n");
+
+			int[] productionAddresses = program.getProductionAddresses(ruleId);
+
+			if (productionAddresses.length > 0) {
+				source.append("switch (pick(");
+				source.append(ruleId);
+				source.append(", t, s)) {\n");
+
+				for (int i = 0; i < productionAddresses.length; i++) {
+					source.append("case ");
+					source.append(i);
+					source.append(": {\n");
+					translateBlock(productionAddresses[i], "d + 1");
+					source.append("break;\n}\n");
+				}
+
+				source.append("default:\nthrow new IllegalStateException();\n}\n");
+			}
+		}
+
+		source.append("}\n");
+	}
+
+	private void appendInterpret(final int ruleId) {
+		source.append("interpret(");
+		source.append(ruleId);
+		source.append(", t, s);\n");
+	}
+
+	private boolean isTranslatable(final int ruleId) {
+		int[] productionAddresses = program.getProductionAddresses(ruleId);
+		int bytecode = RULE_BYTECODE;
+
+		for (int productionAddress: productionAddresses) {
+			bytecode += CASE_BYTECODE;
+
+			for (int address = productionAddress; program.getInstruction(address) != GrammarProgram.OP_RETURN; address += GrammarProgram.getInstructionLength(program.getInstruction(address))) {
+				switch (program.getInstruction(address)) {
+					case GrammarProgram.OP_LITERAL:
+					case GrammarProgram.OP_CALL:
+					case GrammarProgram.OP_CALL_CACHED:
+					case GrammarProgram.OP_EXTERNAL:
+						bytecode += CALL_BYTECODE;
+						break;
+					case GrammarProgram.OP_ENTER:
+					case GrammarProgram.OP_LEAVE:
+						bytecode += ENTER_BYTECODE;
+						break;
+					case GrammarProgram.OP_REPEAT:
+						bytecode += LOOP_BYTECODE;
+						break;
+					case GrammarProgram.OP_NEXT:
+						break;
+					default:
+						return false;
+				}
+			}
+		}
+
+		return bytecode <= MAX_RULE_BYTECODE;
+	}
+
+	/**
+	Translates the code from the given address up to the next RETURN. Apart from the loops of repetitions,
+	this is straight-line code.
+	**/
+
+	private void translateBlock(final int startAddress, final String depth) {
+		int address = startAddress;
+
+		while (program.getInstruction(address) != GrammarProgram.OP_RETURN) {
+			if (program.getInstruction(address) == GrammarProgram.OP_REPEAT) {
+				address = translateLoop(address, depth);
+			} else {
+				translateInstruction(address, depth);
+				address += GrammarProgram.getInstructionLength(program.getInstruction(address));
+			}
+		}
+	}
+
+	/**
+	Translates REPEAT rule exit_address, element, NEXT into a for loop and returns the address after the NEXT
+	**/
+
+	private int translateLoop(final int repeatAddress, final String depth) {
+		final int elementAddress = repeatAddress + GrammarProgram.getInstructionLength(GrammarProgram.OP_REPEAT);
+		final int nextAddress = elementAddress + GrammarProgram.getInstructionLength(program.getInstruction(elementAddress));
+		final int separatorId = program.getInstruction(nextAddress + 2);
+
+		assert program.getInstruction(nextAddress) == GrammarProgram.OP_NEXT;
+		assert program.getInstruction(nextAddress + 1) == elementAddress;
+		assert program.getInstruction(repeatAddress + 2) == nextAddress + GrammarProgram.getInstructionLength(GrammarProgram.OP_NEXT);
+
+		source.append("for (int i = 0, n = repeatCount(");
+		source.append(program.getInstruction(repeatAddress + 1));
+		source.append(", t, s); i < n; i++) {\n");
+
+		if (separatorId != GrammarProgram.NO_LITERAL) {
+			source.append("if (i > 0) {\n");
+			appendHelperCall("literal", separatorId);
+			source.append("}\n");
+		}
+
+		translateInstruction(elementAddress, depth);
+		source.append("}\n");
+
+		return nextAddress + GrammarProgram.getInstructionLength(GrammarProgram.OP_NEXT);
+	}
+
+	private void translateInstruction(final int address, final String depth) {
+		int opcode = program.getInstruction(address);
+
+		switch (opcode) {
+			case GrammarProgram.OP_LITERAL:
+				// Literals are appended via the program, so that their pre-encoded bytes come along
+				appendHelperCall("literal", program.getInstruction(address + 1));
+				break;
+			case GrammarProgram.OP_CALL:
+				source.append("r");
+				source.append(program.getInstruction(address + 1));
+				source.append("(t, s, ");
+				source.append(depth);
+				source.append(");\n");
+				break;
+			case GrammarProgram.OP_CALL_CACHED:
+				appendHelperCall("callCached", program.getInstruction(address + 1));
+				break;
+			case GrammarProgram.OP_EXTERNAL:
+				appendHelperCall("external", program.getInstruction(address + 1));
+				break;
+			case GrammarProgram.OP_ENTER:
+				source.append("final int h = enter(");
+				source.append(program.getInstruction(address + 1));
+				source.append(", s);\n");
+				break;
+			case GrammarProgram.OP_LEAVE:
+				source.append("leave(h, s);\n");
+				break;
+			default:
+				throw new IllegalStateException("Can not translate instruction " + opcode + " at address " + address);
+		}
+	}
+
+	private void appendHelperCall(final String helper, final int operand) {
+		source.append(helper);
+		source.append("(");
+		source.append(operand);
+		source.append(", t, s);\n");
+	}
+}
@@ -1,17 +1,27 @@
 package org.stoev.frizzante;
 
+import java.nio.charset.StandardCharsets;
+
 class GrammarLiteral<T> implements Generatable<T> {
 	private final String value;
 
+	// Encoded once here, so that Sentence.writeTo() does not need to encode the literal each time it is output
+	private final byte[] encodedValue;
+
 	GrammarLiteral(final String lv) {
 		assert lv != null;
 		assert lv.length() > 0;
 
 		value = lv;
+		encodedValue = lv.getBytes(StandardCharsets.UTF_8);
 	}
 
 	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
-		sentence.append(value);
+		appendTo(sentence);
+	}
+
+	void appendTo(final Sentence<T> sentence) {
+		sentence.appendEncoded(value, encodedValue);
 	}
 
 	public String toString() {
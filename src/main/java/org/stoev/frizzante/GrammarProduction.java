@@ -4,6 +4,7 @@ import org.stoev.frizzante.Grammar.GrammarOptions;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Collections;
 import java.util.Scanner;
 import java.util.ListIterator;
 import java.util.Set;
@@ -14,22 +15,27 @@ final class GrammarProduction<T> implements Generatable<T> {
 	private static final String CACHED_EXTENSION = "_cached";
 
 	private static final String ALPHANUMERIC_IDENTIFIER = "[a-zA-Z0-9_]+";
-	private static final String EVERYTHING_ELSE = "[^a-zA-Z0-9_\\s]+";
+	private static final String EVERYTHING_ELSE_CHARACTER = "[^a-zA-Z0-9_\\s]";
 
 	private final GrammarRule<T> parentRule;
+	private final int index;
+	private int id = -1;
 	private final List<Generatable<T>> elements = new ArrayList<Generatable<T>>();
 
+	// The elements used during generation, as shortened by ConstantFolder. Also stored in reverse.
+	private List<Generatable<T>> foldedElements = elements;
 
 	private final double initialWeight;
-	private double weight;
 
-	GrammarProduction(final GrammarRule<T> parent, final String productionString, final Set<GrammarOptions> options) {
+	GrammarProduction(final GrammarRule<T> parent, final int i, final String productionString, final Set<GrammarOptions> options) {
 		this.parentRule = parent;
+		this.index = i;
 
 		final Scanner scanner = new Scanner(productionString);
 		scanner.useDelimiter("");
 
 		String weightString = scanner.findWithinHorizon(WEIGHT_PATTERN, 0);
+		final double weight;
 
 		if (weightString == null) {
 			weight = DEFAULT_WEIGHT;
@@ -52,11 +58,40 @@ final class GrammarProduction<T> implements Generatable<T> {
 			scanner.next(Constants.WHITESPACE);
 		}
 
-		while (true) {
-			String elementString = scanner.findWithinHorizon(
-				  Constants.WHITESPACE
+		// Repetitions, terminals and pooled values are tried before plain identifiers, so that x* or $int(1,10) is a single element.
+		// Runs of other characters stop where one of them starts, e.g. '$string or ([x].
+
+		StringBuilder specialElements = new StringBuilder();
+
+		if (options.contains(GrammarOptions.REPETITION)) {
+			specialElements.append(Constants.OR).append(GrammarRepetition.TOKEN_PATTERN);
+		}
+
+		if (options.contains(GrammarOptions.RANDOM_TERMINALS)) {
+			specialElements.append(Constants.OR).append(RandomTerminal.TOKEN_PATTERN);
+		}
+
+		if (options.contains(GrammarOptions.VALUE_POOLS)) {
+			specialElements.append(Constants.OR).append(PooledValue.TOKEN_PATTERN);
+		}
+
+		String elementPattern = Constants.WHITESPACE;
+
+		if (specialElements.length() > 0) {
+			String specialPattern = specialElements.substring(Constants.OR.length());
+
+			elementPattern = elementPattern
+				+ Constants.OR + Constants.OPTIONAL_WHITESPACE + specialPattern
+				+ Constants.OR + Constants.OPTIONAL_WHITESPACE + ALPHANUMERIC_IDENTIFIER
+				+ Constants.OR + Constants.OPTIONAL_WHITESPACE + "(?:(?!" + specialPattern + ")" + EVERYTHING_ELSE_CHARACTER + ")+";
+		} else {
+			elementPattern = elementPattern
 				+ Constants.OR + Constants.OPTIONAL_WHITESPACE + ALPHANUMERIC_IDENTIFIER
-				+ Constants.OR + Constants.OPTIONAL_WHITESPACE + EVERYTHING_ELSE, 0);
+				+ Constants.OR + Constants.OPTIONAL_WHITESPACE + EVERYTHING_ELSE_CHARACTER + "+";
+		}
+
+		while (true) {
+			String elementString = scanner.findWithinHorizon(elementPattern, 0);
 
 			if (elementString == null) {
 				break;
@@ -72,60 +107,96 @@ final class GrammarProduction<T> implements Generatable<T> {
 		}
 	}
 
-	double getWeight() {
-		return weight;
+	/**
+	Creates a production from elements that have already been split, in the order in which they appear in the output
+	**/
+
+	GrammarProduction(final GrammarRule<T> parent, final int i, final List<Generatable<T>> orderedElements, final double weight) {
+		this.parentRule = parent;
+		this.index = i;
+
+		if (!(weight > 0)) {
+			throw new IllegalArgumentException("Grammar production weight must be positive.");
+		}
+
+		initialWeight = weight;
+
+		elements.addAll(orderedElements);
+		Collections.reverse(elements);
+	}
+
+	/**
+	Returns the weight given in the grammar. The current weight, as changed by feedback, is kept by the parent rule.
+	**/
+
+	double getInitialWeight() {
+		return initialWeight;
 	}
 
 	GrammarRule<T> getParent() {
 		return parentRule;
 	}
 
-	void demote(final double penalty) {
-		if (penalty < 0.0f || penalty > 1.0f) {
-			throw new IllegalArgumentException("Demotion penalty must be between 0 and 1.0.");
-		}
+	int getIndex() {
+		return index;
+	}
 
-		this.weight = this.weight * (1 - penalty);
-		assert this.weight >= 0.0f;
+	/**
+	Returns the number of the production among all productions of the grammar, as assigned by Grammar.compile()
+	**/
 
-		parentRule.recalculateWeightSum();
+	int getId() {
+		assert id >= 0;
+		return id;
 	}
 
-	void promote(final double promotion) {
-		if (promotion < 0.0f || promotion > 1.0d) {
-			throw new IllegalArgumentException("Promotion must be between 0 and 1.0.");
-		}
+	void setId(final int i) {
+		id = i;
+	}
 
+	/**
+	Returns the elements used for generation, in the order in which they appear in the output
+	**/
 
-		Double newWeight = this.weight / (1 - promotion);
-		assert newWeight >= 0.0d;
+	List<Generatable<T>> getElements() {
+		List<Generatable<T>> orderedElements = new ArrayList<Generatable<T>>(foldedElements);
+		Collections.reverse(orderedElements);
+		return orderedElements;
+	}
 
-		// Do not allow the new weight to exceed the initial value
-		// Otherwise weights can grow indefinitely
+	/**
+	Returns the elements as parsed from the grammar, in the order in which they appear in the output
+	**/
 
-		if (newWeight < initialWeight) {
-			weight = newWeight;
-			parentRule.recalculateWeightSum();
-		}
+	List<Generatable<T>> getSourceElements() {
+		List<Generatable<T>> orderedElements = new ArrayList<Generatable<T>>(elements);
+		Collections.reverse(orderedElements);
+		return orderedElements;
+	}
+
+	void setFoldedElements(final List<Generatable<T>> orderedElements) {
+		foldedElements = new ArrayList<Generatable<T>>(orderedElements);
+		Collections.reverse(foldedElements);
 	}
 
 	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
 		sentence.enterProduction(this);
 
-		for (Generatable<T> element: elements) {
+		for (Generatable<T> element: foldedElements) {
 			sentence.pushGeneratable(element);
 		}
 	}
 
 	public void compile(final Grammar<T> grammar) {
+		foldedElements = elements;
+
 		for (int i = 0; i < elements.size(); i++) {
 			String ruleName = elements.get(i).getName();
 			Generatable<T> replacement = null;
 
 			if (ruleName.endsWith(CACHED_EXTENSION)) {
 				String replacementRuleName = ruleName.substring(0, ruleName.length() - CACHED_EXTENSION.length());
-				replacement = new CachedValue<T>(replacementRuleName);
-				grammar.setRuleCached(replacementRuleName);
+				replacement = new CachedValue<T>(replacementRuleName, grammar.setRuleCached(replacementRuleName));
 			} else {
 				replacement = grammar.getRule(ruleName);
 			}
@@ -151,7 +222,7 @@ final class GrammarProduction<T> implements Generatable<T> {
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 
-		sb.append(weight);
+		sb.append(parentRule.getWeight(index));
 		sb.append(Constants.SPACE);
 
 		if (elements.size() == 0) {
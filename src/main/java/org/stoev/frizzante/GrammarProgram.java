@@ -0,0 +1,394 @@
+package org.stoev.frizzante;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The grammar, lowered into a flat stream of int instructions.
+ *
+ * <p>Each rule is compiled into a PICK instruction followed by one block per production:
+ * <pre>
+ * rule:      PICK rule
+ * production: ENTER production, (LITERAL literal | CALL rule | CALL_CACHED rule | EXTERNAL generatable)*, LEAVE, RETURN
+ * </pre>
+ * The single production of a GrammarRepetition holds the repeated element once, and is compiled into a loop instead:
+ * <pre>
+ * production: ENTER production, REPEAT rule exit_address, element, NEXT element_address separator_literal, LEAVE, RETURN
+ * </pre>
+ * REPEAT picks the count and keeps the number of remaining iterations on the stack, jumping to the exit address
+ * if there are none. NEXT jumps back to the element until none remain, appending the separator, if any, in between.
+ * The program is executed by a single loop that keeps return addresses and production handles on a
+ * primitive per-thread stack, so no Generatable objects are pushed during generation. The random choices
+ * are made in exactly the same order as when the grammar is expanded via the Generatable stack, so
+ * a given sentence id produces the same Sentence either way.
+**/
+
+final class GrammarProgram<T> {
+	static final int OP_LITERAL = 1;
+	static final int OP_CALL = 2;
+	static final int OP_CALL_CACHED = 3;
+	static final int OP_EXTERNAL = 4;
+	static final int OP_PICK = 5;
+	static final int OP_ENTER = 6;
+	static final int OP_LEAVE = 7;
+	static final int OP_RETURN = 8;
+	static final int OP_REPEAT = 9;
+	static final int OP_NEXT = 10;
+
+	static final int NO_LITERAL = -1;
+
+	static final int ENTRY_ADDRESS = 0;
+
+	private final int[] code;
+	private final String[] literals;
+	private final byte[][] encodedLiterals;
+	private final List<Generatable<T>> externals;
+	private final List<GrammarRule<T>> rules;
+	private final int productionCount;
+	private final int[] ruleAddresses;
+	private final int[][] productionAddresses;
+
+	private GrammarProgram(final Builder<T> builder) {
+		code = Arrays.copyOf(builder.code, builder.codeSize);
+		literals = builder.literals.toArray(new String[builder.literals.size()]);
+		encodedLiterals = new byte[literals.length][];
+
+		for (int i = 0; i < literals.length; i++) {
+			encodedLiterals[i] = literals[i].getBytes(StandardCharsets.UTF_8);
+		}
+		externals = builder.externals;
+		rules = builder.rules;
+		productionCount = builder.productionCount;
+		ruleAddresses = builder.ruleAddresses;
+		productionAddresses = builder.productionAddresses;
+	}
+
+	static <T> GrammarProgram<T> compile(final Generatable<T> startingGeneratable) {
+		return new Builder<T>().build(startingGeneratable);
+	}
+
+	/**
+	Generates a complete Sentence, starting from the starting rule of the grammar
+	**/
+
+	void execute(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		execute(threadContext, sentence, ENTRY_ADDRESS);
+	}
+
+	/**
+	Generates a single rule, as if it had been CALLed
+	**/
+
+	void executeRule(final ThreadContext<T> threadContext, final Sentence<T> sentence, final int ruleId) {
+		execute(threadContext, sentence, ruleAddresses[ruleId]);
+	}
+
+	private void execute(final ThreadContext<T> threadContext, final Sentence<T> sentence, final int startAddress) {
+		final IntStack stack = threadContext.getProgramStack();
+		final int base = stack.size();
+
+		int pc = startAddress;
+
+		try {
+			while (true) {
+				switch (code[pc]) {
+					case OP_LITERAL:
+						literal(sentence, code[pc + 1]);
+						pc += 2;
+						break;
+					case OP_CALL:
+						stack.push(pc + 2);
+						pc = ruleAddresses[code[pc + 1]];
+						break;
+					case OP_PICK:
+						pc = productionAddresses[code[pc + 1]][pick(threadContext, sentence, code[pc + 1])];
+						break;
+					case OP_ENTER:
+						stack.push(enter(sentence, code[pc + 1]));
+						pc += 2;
+						break;
+					case OP_LEAVE:
+						sentence.endProduction(stack.pop());
+						pc += 1;
+						break;
+					case OP_RETURN:
+						if (stack.size() == base) {
+							return;
+						}
+						pc = stack.pop();
+						break;
+					case OP_CALL_CACHED:
+						callCached(threadContext, sentence, code[pc + 1]);
+						pc += 2;
+						break;
+					case OP_EXTERNAL:
+						external(threadContext, sentence, code[pc + 1]);
+						pc += 2;
+						break;
+					case OP_REPEAT:
+						final int count = repeatCount(sentence, code[pc + 1]);
+
+						if (count > 0) {
+							stack.push(count);
+							pc += 3;
+						} else {
+							pc = code[pc + 2];
+						}
+						break;
+					case OP_NEXT:
+						final int remaining = stack.pop() - 1;
+
+						if (remaining > 0) {
+							stack.push(remaining);
+
+							if (code[pc + 2] != NO_LITERAL) {
+								literal(sentence, code[pc + 2]);
+							}
+
+							pc = code[pc + 1];
+						} else {
+							pc += 3;
+						}
+						break;
+					default:
+						throw new IllegalStateException("Invalid instruction " + code[pc] + " at address " + pc);
+				}
+			}
+		} finally {
+			stack.truncate(base);
+		}
+	}
+
+	void literal(final Sentence<T> sentence, final int literalId) {
+		sentence.appendEncoded(literals[literalId], encodedLiterals[literalId]);
+	}
+
+	int pick(final ThreadContext<T> threadContext, final Sentence<T> sentence, final int ruleId) {
+		return rules.get(ruleId).pickIndex(sentence);
+	}
+
+	int repeatCount(final Sentence<T> sentence, final int ruleId) {
+		return ((GrammarRepetition<T>) rules.get(ruleId)).pickCount(sentence);
+	}
+
+	int enter(final Sentence<T> sentence, final int productionId) {
+		return sentence.startProduction(productionId);
+	}
+
+	void external(final ThreadContext<T> threadContext, final Sentence<T> sentence, final int externalId) {
+		sentence.populate(threadContext, externals.get(externalId));
+	}
+
+	void callCached(final ThreadContext<T> threadContext, final Sentence<T> sentence, final int ruleId) {
+		final GrammarRule<T> rule = rules.get(ruleId);
+		final int productionIndex = pick(threadContext, sentence, ruleId);
+
+		Sentence<T> cachedSentence = sentence.newInstance();
+		execute(threadContext, cachedSentence, productionAddresses[ruleId][productionIndex]);
+
+		threadContext.setCachedValue(rule.getCacheSlot(), cachedSentence);
+		sentence.addAll(cachedSentence);
+	}
+
+	int getCodeSize() {
+		return code.length;
+	}
+
+	int getInstruction(final int address) {
+		return code[address];
+	}
+
+	String getLiteral(final int literalId) {
+		return literals[literalId];
+	}
+
+	int getRuleAddress(final int ruleId) {
+		return ruleAddresses[ruleId];
+	}
+
+	int[] getProductionAddresses(final int ruleId) {
+		return productionAddresses[ruleId].clone();
+	}
+
+	GrammarRule<T> getRule(final int ruleId) {
+		return rules.get(ruleId);
+	}
+
+	static int getInstructionLength(final int opcode) {
+		switch (opcode) {
+			case OP_LEAVE:
+			case OP_RETURN:
+				return 1;
+			case OP_REPEAT:
+			case OP_NEXT:
+				return 3;
+			default:
+				return 2;
+		}
+	}
+
+	int getRuleCount() {
+		return rules.size();
+	}
+
+	int getProductionCount() {
+		return productionCount;
+	}
+
+	private static final class Builder<T> {
+		private int[] code = new int[64];
+		private int codeSize;
+
+		private final List<String> literals = new ArrayList<String>();
+		private final Map<String, Integer> literalIds = new HashMap<String, Integer>();
+		private final List<Generatable<T>> externals = new ArrayList<Generatable<T>>();
+		private final List<GrammarRule<T>> rules = new ArrayList<GrammarRule<T>>();
+		private final Map<GrammarRule<T>, Integer> ruleIds = new IdentityHashMap<GrammarRule<T>, Integer>();
+		private int productionCount;
+		private final Deque<GrammarRule<T>> pendingRules = new ArrayDeque<GrammarRule<T>>();
+
+		private int[] ruleAddresses;
+		private int[][] productionAddresses;
+
+		GrammarProgram<T> build(final Generatable<T> startingGeneratable) {
+			// The entry stub at address 0 calls the starting rule and returns
+
+			emitElement(startingGeneratable);
+			emit(OP_RETURN);
+
+			List<Integer> addresses = new ArrayList<Integer>();
+			List<int[]> productionAddressList = new ArrayList<int[]>();
+
+			while (!pendingRules.isEmpty()) {
+				GrammarRule<T> rule = pendingRules.removeFirst();
+				int ruleId = ruleIds.get(rule);
+				List<GrammarProduction<T>> ruleProductions = rule.getProductions();
+				int[] ruleProductionAddresses = new int[ruleProductions.size()];
+
+				assert addresses.size() == ruleId;
+				addresses.add(codeSize);
+				productionAddressList.add(ruleProductionAddresses);
+
+				if (ruleProductions.isEmpty()) {
+					emit(OP_RETURN);
+					continue;
+				}
+
+				emit(OP_PICK, ruleId);
+
+				for (GrammarProduction<T> production: ruleProductions) {
+					ruleProductionAddresses[production.getIndex()] = codeSize;
+
+					emit(OP_ENTER, production.getId());
+					productionCount++;
+
+					if (rule instanceof GrammarRepetition) {
+						emitRepetition((GrammarRepetition<T>) rule);
+					} else {
+						for (Generatable<T> element: production.getElements()) {
+							emitElement(element);
+						}
+					}
+
+					emit(OP_LEAVE);
+					emit(OP_RETURN);
+				}
+			}
+
+			ruleAddresses = new int[addresses.size()];
+			for (int i = 0; i < ruleAddresses.length; i++) {
+				ruleAddresses[i] = addresses.get(i);
+			}
+
+			productionAddresses = productionAddressList.toArray(new int[productionAddressList.size()][]);
+
+			return new GrammarProgram<T>(this);
+		}
+
+		private void emitElement(final Generatable<T> element) {
+			if (element instanceof GrammarLiteral) {
+				emit(OP_LITERAL, literalId(element.getName()));
+			} else if (element instanceof GrammarRule) {
+				GrammarRule<T> rule = (GrammarRule<T>) element;
+
+				if (rule.isCached()) {
+					emit(OP_CALL_CACHED, ruleId(rule));
+				} else {
+					emit(OP_CALL, ruleId(rule));
+				}
+			} else {
+				emit(OP_EXTERNAL, externals.size());
+				externals.add(element);
+			}
+		}
+
+		private void emitRepetition(final GrammarRepetition<T> repetition) {
+			final Generatable<T> element = repetition.getElement();
+
+			if (repetition.getMaxCount() == 0) {
+				return;
+			}
+
+			// A fixed count of one draws no random number, so the element can be emitted on its own
+			if (repetition.getMaxCount() == 1 && repetition.getMinCount() == 1) {
+				emitElement(element);
+				return;
+			}
+
+			int separatorId = NO_LITERAL;
+
+			if (repetition.getSeparator() != null) {
+				separatorId = literalId(repetition.getSeparator().getName());
+			}
+
+			emit(OP_REPEAT, ruleId(repetition), 0);
+			final int exitOperand = codeSize - 1;
+			final int elementAddress = codeSize;
+			emitElement(element);
+			emit(OP_NEXT, elementAddress, separatorId);
+			code[exitOperand] = codeSize;
+		}
+
+		private int literalId(final String literal) {
+			Integer id = literalIds.get(literal);
+
+			if (id == null) {
+				id = literals.size();
+				literals.add(literal);
+				literalIds.put(literal, id);
+			}
+
+			return id;
+		}
+
+		private int ruleId(final GrammarRule<T> rule) {
+			Integer id = ruleIds.get(rule);
+
+			if (id == null) {
+				id = rules.size();
+				rules.add(rule);
+				ruleIds.put(rule, id);
+				pendingRules.addLast(rule);
+			}
+
+			return id;
+		}
+
+		private void emit(final int... instruction) {
+			if (codeSize + instruction.length > code.length) {
+				code = Arrays.copyOf(code, Math.max(code.length * 2, codeSize + instruction.length));
+			}
+
+			System.arraycopy(instruction, 0, code, codeSize, instruction.length);
+			codeSize += instruction.length;
+		}
+	}
+}
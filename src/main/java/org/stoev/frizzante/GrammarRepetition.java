@@ -0,0 +1,262 @@
+package org.stoev.frizzante;
+
+import org.stoev.frizzante.Grammar.GrammarOptions;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The rule behind a repeated or optional element, such as x{1,5}, x*, x+, x? or [x], available with #option REPETITION.
+ *
+ * <p>One rule is synthesized for each distinct such element in the grammar. It has a single production that holds
+ * the element once, and the count is picked separately each time the rule is generated, so a repetition takes the
+ * same memory whatever its count. Both the Generatable stack and GrammarProgram generate the element in a loop, so a
+ * repetition costs a single production instance and no recursion. GenerationBudget falls back to the smallest count,
+ * and SentenceSimplifier can shrink the repetition to its smallest expansion. Adaptive feedback does not tune the
+ * counts, as they are not productions of their own.
+ *
+ * <p>x{m,n} picks each count from m to n with equal probability, and so do x? and [x], which stand for x{0,1}.
+ * x* and x+ stand for x{0,10:geometric} and x{1,10:geometric}, where each additional element is half as likely
+ * as the one before. The distribution of x{m,n} can be given explicitly as x{m,n:uniform} or x{m,n:geometric}.
+**/
+
+final class GrammarRepetition<T> extends GrammarRule<T> {
+	static final String TOKEN_PATTERN = "(?:[a-zA-Z0-9_]+(?:[*+?](?=\\s|\\z)|\\{\\d+(?:,\\d+)?(?::[a-z]+)?\\})|\\[[a-zA-Z0-9_]+\\])";
+
+	static final int DEFAULT_MAX_COUNT = 10;
+
+	private static final Pattern TOKEN = Pattern.compile(TOKEN_PATTERN);
+	private static final Pattern POSTFIX = Pattern.compile("([a-zA-Z0-9_]+)([*+?])");
+	private static final Pattern BRACES = Pattern.compile("([a-zA-Z0-9_]+)\\{(\\d+)(?:,(\\d+))?(?::([a-z]+))?\\}");
+	private static final Pattern BRACKETS = Pattern.compile("\\[([a-zA-Z0-9_]+)\\]");
+
+	private static final String UNIFORM = "uniform";
+	private static final String GEOMETRIC = "geometric";
+	private static final double GEOMETRIC_RATIO = 0.5;
+
+	private final int minCount;
+	private final int maxCount;
+	private final boolean geometric;
+
+	// Placed between the repeated elements, or null if whitespace is skipped
+	private final GrammarLiteral<T> separator;
+
+	// The element of the single production, once it has been resolved by compile()
+	private Generatable<T> element;
+
+	GrammarRepetition(final String token, final Set<GrammarOptions> options) {
+		super(token);
+
+		final String itemName;
+		String distribution = UNIFORM;
+
+		Matcher postfix = POSTFIX.matcher(token);
+		Matcher braces = BRACES.matcher(token);
+		Matcher brackets = BRACKETS.matcher(token);
+
+		if (postfix.matches()) {
+			itemName = postfix.group(1);
+
+			if (postfix.group(2).equals("*")) {
+				minCount = 0;
+				maxCount = DEFAULT_MAX_COUNT;
+				distribution = GEOMETRIC;
+			} else if (postfix.group(2).equals("+")) {
+				minCount = 1;
+				maxCount = DEFAULT_MAX_COUNT;
+				distribution = GEOMETRIC;
+			} else {
+				minCount = 0;
+				maxCount = 1;
+			}
+		} else if (braces.matches()) {
+			itemName = braces.group(1);
+			minCount = parseCount(braces.group(2), token);
+
+			if (braces.group(3) != null) {
+				maxCount = parseCount(braces.group(3), token);
+			} else {
+				maxCount = minCount;
+			}
+
+			if (braces.group(4) != null) {
+				distribution = braces.group(4);
+			}
+		} else if (brackets.matches()) {
+			itemName = brackets.group(1);
+			minCount = 0;
+			maxCount = 1;
+		} else {
+			throw new IllegalArgumentException("Malformed repetition " + token);
+		}
+
+		if (maxCount < minCount) {
+			throw new IllegalArgumentException("Repetition " + token + " has a maximum count below its minimum count.");
+		}
+
+		if (!distribution.equals(UNIFORM) && !distribution.equals(GEOMETRIC)) {
+			throw new IllegalArgumentException("Unknown distribution " + distribution + " in repetition " + token);
+		}
+
+		geometric = distribution.equals(GEOMETRIC);
+
+		if (options.contains(GrammarOptions.SKIP_WHITESPACE)) {
+			separator = null;
+		} else {
+			separator = new GrammarLiteral<T>(Constants.SPACE);
+		}
+
+		// The element is resolved to the rule of the same name, if any, when the production is compiled
+		addProduction(Collections.<Generatable<T>>singletonList(new GrammarLiteral<T>(itemName)), 1.0d);
+	}
+
+	private static int parseCount(final String countString, final String token) {
+		// The pattern only admits digits, so the only possible problem is the size of the number
+		try {
+			return Integer.parseInt(countString);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Repetition " + token + " can not repeat more than " + Integer.MAX_VALUE + " times.", e);
+		}
+	}
+
+	/**
+	Returns true if the grammar element is a repetition or an optional element, as split by GrammarProduction
+	**/
+
+	static boolean isRepetition(final String elementString) {
+		return TOKEN.matcher(elementString).matches();
+	}
+
+	/**
+	Picks the number of times the element is repeated, using the random number generator of the Sentence, or the
+	smallest count if the Sentence is over its budget. A single random number is drawn, unless the count is fixed.
+	**/
+
+	int pickCount(final Sentence<T> sentence) {
+		if (minCount == maxCount || sentence.isOverBudget()) {
+			return minCount;
+		}
+
+		final long range = (long) maxCount - minCount + 1;
+		final double random = sentence.getRandom().nextDouble();
+		final long offset;
+
+		if (geometric) {
+			// Inverts the cumulative distribution of the geometric distribution truncated to the range
+			offset = (long) Math.floor(Math.log1p(-random * (1 - Math.pow(GEOMETRIC_RATIO, range))) / Math.log(GEOMETRIC_RATIO));
+		} else {
+			offset = (long) (random * range);
+		}
+
+		return (int) (minCount + Math.min(offset, range - 1));
+	}
+
+	/**
+	Generates the element in a loop, with a single RepetitionLoop on the Generatable stack, rather than pushing every copy
+	**/
+
+	@Override
+	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		GrammarProduction<T> production = getProductions().get(pickIndex(sentence));
+		sentence.enterProduction(production);
+
+		final int count = pickCount(sentence);
+
+		if (count > 0) {
+			sentence.pushGeneratable(new RepetitionLoop<T>(element, separator, count - 1));
+			sentence.pushGeneratable(element);
+		}
+	}
+
+	/**
+	Sits on the Generatable stack below the element being repeated, and pushes the separator and the next copy
+	of the element each time it is reached, until no copies remain
+	**/
+
+	private static final class RepetitionLoop<T> implements Generatable<T> {
+		private final Generatable<T> repeatedElement;
+		private final GrammarLiteral<T> separatorLiteral;
+		private int remaining;
+
+		RepetitionLoop(final Generatable<T> e, final GrammarLiteral<T> s, final int r) {
+			repeatedElement = e;
+			separatorLiteral = s;
+			remaining = r;
+		}
+
+		public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+			if (remaining == 0) {
+				return;
+			}
+
+			remaining--;
+			sentence.pushGeneratable(this);
+			sentence.pushGeneratable(repeatedElement);
+
+			if (separatorLiteral != null) {
+				sentence.pushGeneratable(separatorLiteral);
+			}
+		}
+
+		public String toString() {
+			assert false;
+			return "";
+		}
+
+		public String getName() {
+			assert false;
+			return "";
+		}
+
+		public void compile(final Grammar<T> grammar) {
+			assert false;
+		}
+
+		public boolean isConstant() {
+			assert false;
+			return true;
+		}
+	}
+
+	@Override
+	public void compile(final Grammar<T> grammar) {
+		super.compile(grammar);
+		element = getProductions().get(0).getElements().get(0);
+	}
+
+	@Override
+	boolean hasAlternatives() {
+		return minCount < maxCount;
+	}
+
+	@Override
+	public boolean isConstant() {
+		return maxCount == 0 || (minCount == maxCount && super.isConstant());
+	}
+
+	/**
+	Returns the element being repeated, as resolved when the grammar was compiled
+	**/
+
+	Generatable<T> getElement() {
+		return element;
+	}
+
+	int getMinCount() {
+		return minCount;
+	}
+
+	int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	Returns the literal placed between the repeated elements, or null if whitespace is skipped
+	**/
+
+	GrammarLiteral<T> getSeparator() {
+		return separator;
+	}
+}
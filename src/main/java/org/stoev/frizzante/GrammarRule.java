@@ -6,15 +6,29 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class GrammarRule<T> implements Generatable<T> {
 
 	private final String ruleName;
 	private final List<GrammarProduction<T>> productions = new ArrayList<GrammarProduction<T>>();
 
-	private double weightSum;
+	// The slot in ThreadContext that holds the value of the rule, or -1 if the rule is not cached
+	private int cacheSlot = -1;
 
-	private boolean shortestConstantCalculated;
+	// The current weights, guarded by the rule's lock. Picks are made from aliasTable instead, which is
+	// rebuilt from the weights once enough changes or picks have accumulated to pay for the O(n) rebuild.
+	private double[] weights;
+	private int changesSinceRebuild;
+
+	// Replaced as a whole, so picking never needs a lock
+	private volatile AliasTable aliasTable;
+	private volatile boolean aliasTableStale;
+	private final AtomicInteger stalePicks = new AtomicInteger();
+
+	// Set by ShortestDerivations when the grammar is compiled
+	private int shortestProductionIndex = -1;
 	private Sentence<T> shortestConstantSentence;
 
 	GrammarRule(final String rn, final String ruleString, final Set<GrammarOptions> options) {
@@ -38,75 +52,154 @@ class GrammarRule<T> implements Generatable<T> {
 		String[] productionStrings = ruleStringNoSemicolon.split(Constants.OPTIONAL_WHITESPACE + pipePattern, -1);
 
 		for (String productionString: productionStrings) {
-			GrammarProduction<T> production = new GrammarProduction<T>(this, productionString, options);
+			GrammarProduction<T> production = new GrammarProduction<T>(this, productions.size(), productionString, options);
 			productions.add(production);
 		}
 
-		recalculateWeightSum();
+		publishInitialWeights();
+	}
+
+	/**
+	Creates a rule without productions, for rules that are synthesized rather than parsed, such as GrammarRepetition
+	**/
+
+	GrammarRule(final String rn) {
+		ruleName = rn;
+		publishInitialWeights();
+	}
+
+	final void addProduction(final List<Generatable<T>> orderedElements, final double weight) {
+		productions.add(new GrammarProduction<T>(this, productions.size(), orderedElements, weight));
+		publishInitialWeights();
 	}
 
-	public void recalculateWeightSum() {
-		weightSum = 0;
+	private synchronized void publishInitialWeights() {
+		weights = new double[productions.size()];
 
-		for (GrammarProduction<T> production: productions) {
-			weightSum += production.getWeight();
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = productions.get(i).getInitialWeight();
 		}
+
+		rebuildAliasTable();
 	}
 
-	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
-		if (productions.size() == 0) {
-			if (!shortestConstantCalculated) {
-				shortestConstantSentence = sentence.newInstance();
-				shortestConstantCalculated = true;
+	/**
+	Multiplies the weights of the given productions by the corresponding factors. Weights never grow past
+	the ones given in the grammar. Only called by WeightDeltas, possibly from several threads at once.
+
+	Each call costs as much as the number of productions changed. The alias table is only rebuilt once as
+	many changes as there are productions have been merged, or as many picks have been made since the first
+	change, so rebuilding costs O(1) per change or pick, and feedback reaches the picks within O(n) of either.
+	**/
+
+	synchronized void mergeWeights(final int[] changedIndexes, final int changedCount, final double[] factors) {
+		for (int i = 0; i < changedCount; i++) {
+			final int index = changedIndexes[i];
+			final double newWeight = weights[index] * factors[index];
+
+			// A weight of zero stays at zero, even if promoted with an infinite factor
+			if (!Double.isNaN(newWeight)) {
+				weights[index] = Math.min(newWeight, productions.get(index).getInitialWeight());
 			}
-			return;
 		}
 
-		GrammarProduction<T> randomProduction = null;
-		double randomWeight = sentence.getRandom().nextDouble() * weightSum;
-		double runningWeight = 0;
+		changesSinceRebuild += changedCount;
+		aliasTableStale = true;
+
+		if (changesSinceRebuild >= weights.length) {
+			rebuildAliasTable();
+		}
+	}
+
+	private synchronized void rebuildAliasTable() {
+		aliasTable = new AliasTable(weights);
+		aliasTableStale = false;
+		changesSinceRebuild = 0;
+		stalePicks.set(0);
+	}
+
+	synchronized double getWeight(final int productionIndex) {
+		return weights[productionIndex];
+	}
+
+	/**
+	Picks a production for the Sentence, falling back to the shortest terminating one if the Sentence is over its budget
+	**/
+
+	int pickIndex(final Sentence<T> sentence) {
+		if (shortestProductionIndex != -1 && sentence.isOverBudget()) {
+			sentence.getBudget().recordHit(ruleName);
+			return shortestProductionIndex;
+		}
+
+		return pickIndex(sentence.getRandom());
+	}
+
+	int pickIndex(final Random random) {
+		final int index = aliasTable.pick(random.nextDouble());
 
-		for (GrammarProduction<T> production: productions) {
-			runningWeight = runningWeight + production.getWeight();
-			if (runningWeight > randomWeight) {
-				randomProduction = production;
-				break;
+		// Only rules that have received feedback since the last rebuild touch any shared state here
+		if (aliasTableStale && stalePicks.incrementAndGet() >= productions.size()) {
+			synchronized (this) {
+				if (aliasTableStale) {
+					rebuildAliasTable();
+				}
 			}
 		}
 
-		assert randomProduction != null;
+		return index;
+	}
+
+	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		if (productions.size() == 0) {
+			return;
+		}
+
+		GrammarProduction<T> randomProduction = productions.get(pickIndex(sentence));
 
-		if (threadContext.getGlobalContext().getGrammar().shouldCacheRule(ruleName)) {
+		if (cacheSlot >= 0) {
 			Sentence<T> cachedSentence = sentence.newInstance();
 			cachedSentence.populate(threadContext, randomProduction);
 
-			threadContext.setCachedValue(ruleName, cachedSentence);
+			threadContext.setCachedValue(cacheSlot, cachedSentence);
 			sentence.addAll(cachedSentence);
 		} else {
 			sentence.pushGeneratable(randomProduction);
 		}
+	}
 
-		if (!shortestConstantCalculated) {
-			for (GrammarProduction<T> production: productions) {
-				if (!production.isConstant()) {
-					continue;
-				}
+	void setCacheSlot(final int slot) {
+		cacheSlot = slot;
+	}
 
-				Sentence<T> constantSentence = sentence.newInstance();
-				constantSentence.populate(threadContext, production);
+	int getCacheSlot() {
+		return cacheSlot;
+	}
 
-				if (shortestConstantSentence == null || shortestConstantSentence.size() > constantSentence.size()) {
-					shortestConstantSentence = constantSentence;
-				}
-			}
+	boolean isCached() {
+		return cacheSlot >= 0;
+	}
 
-			shortestConstantCalculated = true;
-		}
+	void setShortestDerivation(final int productionIndex, final Sentence<T> constantSentence) {
+		shortestProductionIndex = productionIndex;
+		shortestConstantSentence = constantSentence;
 	}
 
-	public Sentence<T> getShortestConstantSentence() {
-		assert shortestConstantCalculated;
+	/**
+	Returns the index of the production that starts the shortest terminating derivation of the rule,
+	or -1 if the rule can never terminate
+	**/
+
+	int getShortestProductionIndex() {
+		return shortestProductionIndex;
+	}
+
+	/**
+	Returns the shortest Sentence the rule can produce without running any Java code, or null if there is none.
+	The Sentence is shared and must not be modified.
+	**/
 
+	public Sentence<T> getShortestConstantSentence() {
 		return shortestConstantSentence;
 	}
 
@@ -114,6 +207,18 @@ class GrammarRule<T> implements Generatable<T> {
 		return productions.size();
 	}
 
+	/**
+	Returns true if the rule can produce different output depending on the choices made, so SentenceSimplifier may shrink it
+	**/
+
+	boolean hasAlternatives() {
+		return productions.size() > 1;
+	}
+
+	List<GrammarProduction<T>> getProductions() {
+		return productions;
+	}
+
 	public void compile(final Grammar<T> grammar) {
 		for (Generatable<T> production : productions) {
 			production.compile(grammar);
@@ -0,0 +1,21 @@
+package org.stoev.frizzante;
+
+/**
+ * How ThreadContext.newSentence() picks the id of each new Sentence from the range set by idRange().
+ *
+ * @see GlobalContext.ContextBuilder#idMode(IdMode)
+**/
+
+public enum IdMode {
+	/**
+	Each id is drawn at random from the whole range, so ids repeat, both within a thread and across threads
+	**/
+	RANDOM,
+
+	/**
+	The range is shuffled by a permutation keyed from the global random seed and split into one slice per thread.
+	Each thread walks its own slice, so N Sentences from any number of threads have N distinct ids, until a slice
+	runs out and the thread starts over at the beginning of its slice.
+	**/
+	PERMUTED
+}
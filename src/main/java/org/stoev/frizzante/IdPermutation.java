@@ -0,0 +1,82 @@
+package org.stoev.frizzante;
+
+/**
+ * A keyed pseudo-random permutation of the sentence ids in a range, used by IdMode.PERMUTED.
+ *
+ * <p>The position within the range is encrypted by a balanced Feistel network over the smallest even number
+ * of bits that can hold it. The Feistel network is a bijection on its domain, and values that fall outside the
+ * range are encrypted again until they land inside it (cycle walking), which keeps it a bijection on the range.
+ * The domain is less than four times the size of the range, so only a few rounds of walking are needed on average.
+ *
+ * <p>No state is kept, so any number of threads can use the same instance.
+**/
+
+final class IdPermutation {
+	private static final int ROUNDS = 6;
+
+	private final long start;
+	private final long size;
+	private final int halfBits;
+	private final long halfMask;
+	private final long[] roundKeys = new long[ROUNDS];
+
+	IdPermutation(final long s, final long n, final long key) {
+		if (n < 1) {
+			throw new IllegalArgumentException("Id range must contain at least one id.");
+		}
+
+		start = s;
+		size = n;
+
+		int bits = Math.max(2, Long.SIZE - Long.numberOfLeadingZeros(n - 1));
+		halfBits = (bits + 1) / 2;
+		halfMask = (1L << halfBits) - 1;
+
+		long k = key;
+		for (int i = 0; i < ROUNDS; i++) {
+			k += 0x9e3779b97f4a7c15L;
+			roundKeys[i] = mix64(k);
+		}
+	}
+
+	long size() {
+		return size;
+	}
+
+	/**
+	Returns the id at the given position of the permutation, for a position between 0 and size() - 1
+	**/
+
+	long get(final long position) {
+		assert position >= 0 && position < size;
+
+		long value = position;
+
+		// With halfBits of 32 the domain is the full 64 bits, so values past Long.MAX_VALUE show up as negative
+		do {
+			value = encrypt(value);
+		} while (value < 0 || value >= size);
+
+		return start + value;
+	}
+
+	private long encrypt(final long value) {
+		long left = (value >>> halfBits) & halfMask;
+		long right = value & halfMask;
+
+		for (int i = 0; i < ROUNDS; i++) {
+			long newRight = left ^ (mix64(right ^ roundKeys[i]) & halfMask);
+			left = right;
+			right = newRight;
+		}
+
+		return (left << halfBits) | right;
+	}
+
+	private static long mix64(final long value) {
+		long z = value;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -1,14 +1,16 @@
 package org.stoev.frizzante;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.InvocationTargetException;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 final class InlineJava<T> implements Generatable<T> {
 	private final String className;
 	private final String javaString;
-	private Method javaMethod = null;
+	private InlineJavaCode<T> javaCode = null;
+	private int cacheSlot = -1;
 
 	InlineJava(final String cn, final String js) {
 		javaString = js;
@@ -17,54 +19,93 @@ final class InlineJava<T> implements Generatable<T> {
 		assert javaString != null;
 		assert className != null;
 		assert className.length() > 0;
+	}
+
+	/**
+	Runs javac once for all the given rules that have not been compiled yet, as starting javac
+	is far slower than compiling one more class in the same batch
+	**/
 
+	static <T> void compileAll(final Collection<InlineJava<T>> inlineJavas) {
 		JavaBatchCompiler javaCompiler = new JavaBatchCompiler(null, new String[] {
+			"import org.stoev.frizzante.InlineJavaCode",
 			"import org.stoev.frizzante.ThreadContext",
 			"import org.stoev.frizzante.Sentence"
 		});
 
-		StringBuilder javaCode = new StringBuilder();
-		javaCode.append("public static void generate(final ThreadContext<Object> threadContext, final Sentence<Object> sentence) {\n");
-		javaCode.append(javaString);
-		javaCode.append("}\n");
+		List<InlineJava<T>> pendingJavas = new ArrayList<InlineJava<T>>();
+
+		for (InlineJava<T> inlineJava : inlineJavas) {
+			if (inlineJava.javaCode == null) {
+				javaCompiler.addJavaClass(inlineJava.className, "implements InlineJavaCode<Object>", inlineJava.getMethodString());
+				pendingJavas.add(inlineJava);
+			}
+		}
+
+		if (pendingJavas.isEmpty()) {
+			return;
+		}
 
-		javaCompiler.addJavaClass(className, javaCode.toString());
 		javaCompiler.compileAll();
 
 		Iterator<Class<?>> classIterator = javaCompiler.iterator();
-		assert classIterator.hasNext();
 
-		Class<?> javaClass = classIterator.next();
+		for (InlineJava<T> inlineJava : pendingJavas) {
+			assert classIterator.hasNext();
+			inlineJava.instantiate(classIterator.next());
+		}
+
 		assert !classIterator.hasNext();
-		assert javaClass != null;
+	}
 
-		Method[] javaMethods = javaClass.getDeclaredMethods();
-		assert javaMethods.length == 1;
+	private String getMethodString() {
+		StringBuilder methodString = new StringBuilder();
+		methodString.append("public void generate(final ThreadContext<Object> threadContext, final Sentence<Object> sentence) {\n");
+		methodString.append(javaString);
+		methodString.append("}\n");
 
-		javaMethod = javaMethods[0];
-		assert javaMethod != null;
+		return methodString.toString();
 	}
 
-	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+	private void instantiate(final Class<?> javaClass) {
+		assert javaClass != null;
+
 		try {
+			@SuppressWarnings("unchecked")
+			InlineJavaCode<T> newJavaCode = (InlineJavaCode<T>) javaClass.getConstructor().newInstance();
+			javaCode = newJavaCode;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unable to instantiate the Java code for " + className, e);
+		}
+	}
 
-			if (threadContext.getGlobalContext().getGrammar().shouldCacheRule(className)) {
+	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		try {
+			if (cacheSlot >= 0) {
 				Sentence<T> cachedSentence = sentence.newInstance();
-				javaMethod.invoke(null, threadContext, cachedSentence);
-	                        threadContext.setCachedValue(className, cachedSentence);
+				javaCode.generate(threadContext, cachedSentence);
+				threadContext.setCachedValue(cacheSlot, cachedSentence);
 				sentence.addAll(cachedSentence);
 			} else {
-				javaMethod.invoke(null, threadContext, sentence);
+				javaCode.generate(threadContext, sentence);
 			}
-		} catch (IllegalAccessException illegalAccessException) {
-			assert false : illegalAccessException.getMessage();
-		} catch (InvocationTargetException invocationTargetException) {
-			throw new IllegalArgumentException("Inline Java code threw an exception.", invocationTargetException.getCause());
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Inline Java code threw an exception.", e);
 		}
 	}
 
+	/**
+	Runs javac on the code, unless the Grammar has already compiled it in a batch with the other reachable rules
+	**/
+
 	public void compile(final Grammar<T> grammar) {
-		// do nothing at the compilation phase
+		if (javaCode == null) {
+			compileAll(Collections.singletonList(this));
+		}
+	}
+
+	void setCacheSlot(final int slot) {
+		cacheSlot = slot;
 	}
 
 	public boolean isConstant() {
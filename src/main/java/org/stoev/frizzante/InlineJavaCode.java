@@ -0,0 +1,12 @@
+package org.stoev.frizzante;
+
+/**
+ * Implemented by the classes compiled from inline Java rules.
+ *
+ * <p>The compiled class is instantiated once and then called through this interface, so
+ * generation does not go through reflection. It is not meant to be implemented by hand.
+**/
+
+public interface InlineJavaCode<T> {
+	void generate(ThreadContext<T> threadContext, Sentence<T> sentence);
+}
@@ -0,0 +1,36 @@
+package org.stoev.frizzante;
+
+import java.util.Arrays;
+
+/**
+ * A growable stack of primitive ints, so that the generation loop does not have to box anything.
+**/
+
+final class IntStack {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int[] values = new int[INITIAL_CAPACITY];
+	private int size;
+
+	void push(final int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		values[size++] = value;
+	}
+
+	int pop() {
+		assert size > 0;
+		return values[--size];
+	}
+
+	int size() {
+		return size;
+	}
+
+	void truncate(final int newSize) {
+		assert newSize <= size;
+		size = newSize;
+	}
+}
@@ -85,6 +85,14 @@ public final class JavaBatchCompiler implements Iterable<Class<?>> {
 	};
 
 	void addJavaClass(final String className, final String javaString) {
+		addJavaClass(className, "", javaString);
+	}
+
+	/**
+	Adds a class whose declaration carries an extends or implements clause, e.g. "extends Foo"
+	**/
+
+	void addJavaClass(final String className, final String classDeclaration, final String javaString) {
 		StringBuilder javaStringBuilder = new StringBuilder();
 
 		for (String packageHeader: packageHeaders) {
@@ -94,6 +102,8 @@ public final class JavaBatchCompiler implements Iterable<Class<?>> {
 
 		javaStringBuilder.append("public class ");
 		javaStringBuilder.append(className);
+		javaStringBuilder.append(" ");
+		javaStringBuilder.append(classDeclaration);
 		javaStringBuilder.append("{");
 		javaStringBuilder.append(javaString);
                 javaStringBuilder.append("}");
@@ -1,5 +1,7 @@
 package org.stoev.frizzante;
 
+import java.util.List;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -41,17 +43,30 @@ public class JavaBatchRunnable extends FuzzRunnable {
 
 	@Override
 	public final void run() {
-		while (executionCounter < threadContext.getGlobalContext().getCount()) {
-			Map<String, Sentence<?>> classNameToSentence = new HashMap<String, Sentence<?>>();
+		run(threadContext);
+	}
+
+	private <T> void run(final ThreadContext<T> context) {
+		// Sentence objects are reused from one batch to the next in order to avoid allocations
+		final List<Sentence<T>> sentences = new ArrayList<Sentence<T>>();
+		final Map<String, Sentence<T>> classNameToSentence = new HashMap<String, Sentence<T>>();
+
+		while (executionCounter < context.getGlobalContext().getCount()) {
+			classNameToSentence.clear();
 
-			long currentBatchSize = Math.min(getBatchSize(), threadContext.getGlobalContext().getCount() - executionCounter);
+			long currentBatchSize = Math.min(getBatchSize(), context.getGlobalContext().getCount() - executionCounter);
 
 			for (int n = 0; n < currentBatchSize; n++) {
 				if (interrupted) {
 					return;
 				}
 
-				Sentence<?> javaSentence = threadContext.generateSentence();
+				if (sentences.size() <= n) {
+					sentences.add(context.newSentence());
+				}
+
+				Sentence<T> javaSentence = sentences.get(n);
+				context.generateInto(javaSentence);
 				String className = CLASS_PREFIX + javaSentence.getId();
 
 				classNameToSentence.put(className, javaSentence);
@@ -1,13 +1,27 @@
 package org.stoev.frizzante;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 final class JavaVisitor<T> implements Generatable<T> {
+	private static final String ADAPTER_PREFIX = "JavaVisitor_";
+
 	private final String methodName;
-	private final Method methodObject;
+	private final Method method;
 	private final Object visitor;
 	private final Generatable<T> argument;
+	private JavaVisitorCode<T> visitorCode = null;
 
 	JavaVisitor(final Object v, final String mn, final Generatable<T> arg) {
 		visitor = v;
@@ -21,16 +35,168 @@ final class JavaVisitor<T> implements Generatable<T> {
 
 		try {
 			Class<?> visitorClass = visitor.getClass();
-			methodObject = visitorClass.getDeclaredMethod(methodName, ThreadContext.class, Sentence.class, Sentence.class);
+			method = visitorClass.getDeclaredMethod(methodName, ThreadContext.class, Sentence.class, Sentence.class);
 		} catch (NoSuchMethodException e) {
 			throw new IllegalArgumentException("Method " + methodName + " in visitor class " + visitor.getClass() + " does not have the correct signature.", e);
 		}
 
-		if (!methodObject.getReturnType().equals(Void.TYPE)) {
+		if (!method.getReturnType().equals(Void.TYPE)) {
 			throw new IllegalArgumentException("Visitor must be declared as void.");
 		}
+	}
+
+	/**
+	Generates an adapter class implementing JavaVisitorCode for each of the given visitors that has not been compiled yet,
+	with a single javac run. Visitors that generated code can not call, e.g. local classes or non-public methods,
+	are called through a bound MethodHandle instead.
+	**/
+
+	static <T> void compileAll(final Collection<JavaVisitor<T>> javaVisitors) {
+		JavaBatchCompiler javaCompiler = new JavaBatchCompiler(JavaBatchCompiler.GLOBAL_CLASS_CACHE, new String[] {
+			"import org.stoev.frizzante.JavaVisitorCode",
+			"import org.stoev.frizzante.ThreadContext",
+			"import org.stoev.frizzante.Sentence"
+		});
+
+		List<JavaVisitor<T>> pendingVisitors = new ArrayList<JavaVisitor<T>>();
+
+		for (JavaVisitor<T> javaVisitor : javaVisitors) {
+			if (javaVisitor.visitorCode != null) {
+				continue;
+			}
+
+			if (javaVisitor.isCallableFromGeneratedCode()) {
+				javaCompiler.addJavaClass(javaVisitor.getAdapterName(), "implements JavaVisitorCode<Object>", javaVisitor.getAdapterString());
+				pendingVisitors.add(javaVisitor);
+			} else {
+				javaVisitor.visitorCode = new MethodHandleCode<T>(javaVisitor.visitor, javaVisitor.method);
+			}
+		}
+
+		if (pendingVisitors.isEmpty()) {
+			return;
+		}
+
+		javaCompiler.compileAll();
+
+		Iterator<Class<?>> classIterator = javaCompiler.iterator();
+
+		for (JavaVisitor<T> javaVisitor : pendingVisitors) {
+			assert classIterator.hasNext();
+			javaVisitor.instantiate(classIterator.next());
+		}
+
+		assert !classIterator.hasNext();
+	}
+
+	/**
+	The adapter is compiled against the class path and loaded by a class loader whose parent is the system
+	class loader, so it can only call public methods of public classes that the system class loader sees
+	**/
+
+	private boolean isCallableFromGeneratedCode() {
+		Class<?> visitorClass = visitor.getClass();
+
+		if (visitorClass.getCanonicalName() == null || !Modifier.isPublic(method.getModifiers())) {
+			return false;
+		}
+
+		for (Class<?> c = visitorClass; c != null; c = c.getEnclosingClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
 
-		assert methodObject != null;
+		for (Class<?> exceptionType : method.getExceptionTypes()) {
+			if (!RuntimeException.class.isAssignableFrom(exceptionType) && !Error.class.isAssignableFrom(exceptionType)) {
+				return false;
+			}
+		}
+
+		try {
+			return Class.forName(visitorClass.getName(), false, ClassLoader.getSystemClassLoader()) == visitorClass;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	The name is derived from the visitor class and method, escaped so that different pairs never map to the same name,
+	which lets the adapter be shared through the global class cache
+	**/
+
+	private String getAdapterName() {
+		String className = visitor.getClass().getName().replace("_", "__").replace(".", "_0").replace("$", "_1");
+		return ADAPTER_PREFIX + className + "_2" + methodName.replace("_", "__").replace("$", "_1");
+	}
+
+	private String getAdapterString() {
+		String visitorClassName = visitor.getClass().getCanonicalName();
+		StringBuilder adapterString = new StringBuilder();
+
+		adapterString.append("private final ").append(visitorClassName).append(" visitor;\n");
+		adapterString.append("public ").append(getAdapterName()).append("(final Object v) {\n");
+		adapterString.append("visitor = (").append(visitorClassName).append(") v;\n");
+		adapterString.append("}\n");
+
+		// The visitor may declare its parameters with any type argument, so they are passed on as raw types
+		adapterString.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+		adapterString.append("public void visit(final ThreadContext<Object> threadContext, final Sentence<Object> sentence, final Sentence<Object> argument) {\n");
+		adapterString.append("visitor.").append(methodName).append("((ThreadContext) threadContext, (Sentence) sentence, (Sentence) argument);\n");
+		adapterString.append("}\n");
+
+		return adapterString.toString();
+	}
+
+	private void instantiate(final Class<?> adapterClass) {
+		assert adapterClass != null;
+
+		try {
+			@SuppressWarnings("unchecked")
+			JavaVisitorCode<T> newVisitorCode = (JavaVisitorCode<T>) adapterClass.getConstructor(Object.class).newInstance(visitor);
+			visitorCode = newVisitorCode;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unable to instantiate the adapter for visitor " + methodName + " in class " + visitor.getClass(), e);
+		}
+	}
+
+	/**
+	Calls visitors that an adapter can not be generated for through a MethodHandle bound to the visitor
+	**/
+
+	private static final class MethodHandleCode<T> implements JavaVisitorCode<T> {
+		private final MethodHandle methodHandle;
+
+		MethodHandleCode(final Object visitor, final Method method) {
+			try {
+				AccessController.doPrivileged(new PrivilegedAction<Void>() {
+					@Override
+					public Void run() {
+						method.setAccessible(true);
+						return null;
+					}
+				});
+
+				methodHandle = MethodHandles.lookup().unreflect(method).bindTo(visitor).asType(MethodType.methodType(void.class, ThreadContext.class, Sentence.class, Sentence.class));
+			} catch (IllegalAccessException | SecurityException e) {
+				throw new IllegalArgumentException("Unable to access visitor " + method.getName() + " in class " + visitor.getClass(), e);
+			}
+		}
+
+		@Override
+		public void visit(final ThreadContext<T> threadContext, final Sentence<T> sentence, final Sentence<T> argument) {
+			try {
+				methodHandle.invokeExact(threadContext, sentence, argument);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+	}
+
+	boolean isCalledThroughAdapter() {
+		return visitorCode != null && !(visitorCode instanceof MethodHandleCode);
 	}
 
 	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
@@ -45,14 +211,16 @@ final class JavaVisitor<T> implements Generatable<T> {
 		}
 
 		try {
-			methodObject.invoke(visitor, threadContext, sentence, argumentSentence);
-		} catch (IllegalAccessException e) {
-			throw new IllegalArgumentException("IllegalAccessException when attempting to invoke visitor " + methodName + " in class " + visitor.getClass(), e);
-		} catch (InvocationTargetException e) {
+			visitorCode.visit(threadContext, sentence, argumentSentence);
+		} catch (RuntimeException e) {
 			throw new IllegalArgumentException("Visitor " + methodName + " in class " +  visitor.getClass() + " threw an exception.", e);
 		}
 	}
 
+	Generatable<T> getArgument() {
+		return argument;
+	}
+
 	public String toString() {
 		return methodName;
 	}
@@ -61,7 +229,15 @@ final class JavaVisitor<T> implements Generatable<T> {
 		return methodName;
 	}
 
+	/**
+	Generates the adapter, unless the Grammar has already compiled it in a batch with the other reachable visitors
+	**/
+
 	public void compile(final Grammar<T> grammar) {
+		if (visitorCode == null) {
+			compileAll(Collections.singletonList(this));
+		}
+
 		if (argument != null) {
 			argument.compile(grammar);
 		}
@@ -0,0 +1,12 @@
+package org.stoev.frizzante;
+
+/**
+ * Implemented by the adapter classes generated for visitor methods.
+ *
+ * <p>The adapter holds the visitor and calls the visitor method directly, so generation does not go
+ * through reflection or a MethodHandle. It is not meant to be implemented by hand.
+**/
+
+public interface JavaVisitorCode<T> {
+	void visit(ThreadContext<T> threadContext, Sentence<T> sentence, Sentence<T> argument);
+}
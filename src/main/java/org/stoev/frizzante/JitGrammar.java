@@ -0,0 +1,56 @@
+package org.stoev.frizzante;
+
+/**
+ * Base class for the Java code generated from a grammar when JIT mode is enabled.
+ *
+ * <p>The generated class is loaded by its own class loader, so it can only reach the
+ * generator runtime through the protected methods below. It is not meant to be extended by hand.
+ *
+ * @see GlobalContext.ContextBuilder#jit(boolean)
+**/
+
+public abstract class JitGrammar<T> {
+	private GrammarProgram<T> program;
+
+	protected JitGrammar() {
+		// Instantiated reflectively by GrammarJitCompiler
+	}
+
+	final void bind(final GrammarProgram<T> p) {
+		program = p;
+	}
+
+	protected abstract void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence);
+
+	protected final void literal(final int literalId, final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		program.literal(sentence, literalId);
+	}
+
+	protected final int pick(final int ruleId, final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		return program.pick(threadContext, sentence, ruleId);
+	}
+
+	protected final int repeatCount(final int ruleId, final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		return program.repeatCount(sentence, ruleId);
+	}
+
+	protected final int enter(final int productionId, final Sentence<T> sentence) {
+		return program.enter(sentence, productionId);
+	}
+
+	protected final void leave(final int handle, final Sentence<T> sentence) {
+		sentence.endProduction(handle);
+	}
+
+	protected final void callCached(final int ruleId, final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		program.callCached(threadContext, sentence, ruleId);
+	}
+
+	protected final void external(final int externalId, final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		program.external(threadContext, sentence, externalId);
+	}
+
+	protected final void interpret(final int ruleId, final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		program.executeRule(threadContext, sentence, ruleId);
+	}
+}
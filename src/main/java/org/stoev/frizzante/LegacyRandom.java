@@ -0,0 +1,36 @@
+package org.stoev.frizzante;
+
+/**
+ * A java.util.Random seeded exactly as Sentences were seeded before SentenceRandom was introduced.
+ *
+ * <p>Child Sentences are seeded from the same id as their parent, which also matches the old behavior.
+**/
+
+final class LegacyRandom extends SentenceRandom {
+	private static final long serialVersionUID = 1L;
+
+	private long id;
+
+	@Override
+	public void seedFromId(final long newId) {
+		id = newId;
+		setSeed(id);
+
+		// We reseed the PRNG here because id can be a small integer, which does not make for a good seed
+		// when doubles are being generated when picking a random grammar production
+
+		setSeed(nextLong());
+	}
+
+	@Override
+	public SentenceRandom split() {
+		LegacyRandom child = new LegacyRandom();
+		child.seedFromId(id);
+		return child;
+	}
+
+	@Override
+	public SentenceRandom newInstance() {
+		return new LegacyRandom();
+	}
+}
@@ -0,0 +1,205 @@
+package org.stoev.frizzante;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes values into, or samples values from, the ValuePool of a rule, available with #option VALUE_POOLS:
+ * <ul>
+ * <li> $publish(rule) or $publish(rule,capacity) - generates the rule, as if it were referenced directly, and adds
+ * the value to the pool of the rule. The pool holds the last ValuePool.DEFAULT_CAPACITY values, unless a capacity is given;
+ * <li> $sample(rule) or $sample(rule,bias) - outputs a value from the pool of the rule, as published by any thread.
+ * As long as the pool is empty, the rule is generated instead.
+ * </ul>
+ * The bias is one of:
+ * <ul>
+ * <li> uniform - the default, all values in the pool are equally likely;
+ * <li> latest - recently published values are the most likely, with a Zipfian distribution over their age;
+ * <li> any other Distribution, such as zipf=0.99 or hotspot=0.2, which also applies to the age of the values, so
+ * that the most recently published values are the hot ones. latest is the same as zipf=0.99.
+ * </ul>
+ * Skewed indexes are drawn over the values currently in the pool, by rejection from a distribution over the next
+ * power of two, so the skew is the same while the pool is filling up as once it is full. The bias follows the age
+ * of the values rather than the slots of the ring buffer, whose contents are replaced on every wrap.
+ * Since the contents of the pool depend on what other threads have generated, a Sentence that samples from a
+ * pool can not be reproduced from its id alone.
+**/
+
+final class PooledValue<T> implements Generatable<T> {
+	static final String TOKEN_PATTERN = "(?:\\$(?:publish|sample)\\([^()]*\\))";
+
+	private static final Pattern TOKEN = Pattern.compile("\\$(publish|sample)\\(\\s*([a-zA-Z0-9_]+)\\s*(?:,\\s*([^()]*?)\\s*)?\\)");
+
+	private static final String PUBLISH = "publish";
+	private static final String UNIFORM = "uniform";
+	private static final String LATEST = "latest";
+	private static final String LATEST_DISTRIBUTION = "zipf=0.99";
+
+	private final String token;
+	private final String ruleName;
+	private final boolean publishing;
+	private final int capacity;
+	private final String bias;
+
+	private Generatable<T> rule;
+	private ValuePool<T> pool;
+
+	// For a skewed bias, the distribution over the next power of two of each pool size, up to the capacity
+	private Distribution[] distributions;
+
+	PooledValue(final String t) {
+		token = t;
+
+		Matcher matcher = TOKEN.matcher(token);
+
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Malformed pool reference " + token + ", expected $publish(rule[,capacity]) or $sample(rule[,bias]).");
+		}
+
+		publishing = matcher.group(1).equals(PUBLISH);
+		ruleName = matcher.group(2);
+		String argument = matcher.group(3);
+
+		if (publishing) {
+			bias = null;
+
+			if (argument == null) {
+				capacity = -1;
+			} else {
+				try {
+					capacity = Integer.parseInt(argument);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid capacity in " + token, e);
+				}
+
+				if (capacity < 1) {
+					throw new IllegalArgumentException("Capacity in " + token + " must be positive.");
+				}
+			}
+		} else {
+			capacity = -1;
+
+			if (argument == null) {
+				bias = UNIFORM;
+			} else {
+				bias = argument;
+			}
+		}
+	}
+
+	static boolean isPooledValue(final String elementString) {
+		return elementString.matches(TOKEN_PATTERN);
+	}
+
+	String getRuleName() {
+		return ruleName;
+	}
+
+	boolean isPublishing() {
+		return publishing;
+	}
+
+	/**
+	Returns the capacity given in the grammar, or -1 if none was given
+	**/
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	Called by the Grammar once it has created the pool, since several elements may refer to the same one
+	**/
+
+	void setPool(final ValuePool<T> p) {
+		pool = p;
+
+		if (bias == null || bias.equals(UNIFORM)) {
+			distributions = null;
+			return;
+		}
+
+		String specification = bias;
+
+		if (bias.equals(LATEST)) {
+			specification = LATEST_DISTRIBUTION;
+		}
+
+		final int capacity = pool.getCapacity();
+		distributions = new Distribution[sizeClass(capacity) + 1];
+
+		for (int i = 0; i < distributions.length; i++) {
+			distributions[i] = Distribution.create(specification, Math.min(1L << i, capacity));
+		}
+	}
+
+	/**
+	Returns the exponent of the smallest power of two that is at least the given size
+	**/
+
+	private static int sizeClass(final int size) {
+		return Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		Sentence<T> value = null;
+
+		if (!publishing) {
+			value = sample(sentence.getRandom());
+		}
+
+		if (value == null) {
+			value = sentence.newInstance();
+			value.populate(threadContext, rule);
+
+			if (publishing) {
+				pool.publish(value);
+			}
+		}
+
+		sentence.addAll(value);
+	}
+
+	private Sentence<T> sample(final Random random) {
+		final int size = pool.size();
+
+		if (size == 0) {
+			return null;
+		}
+
+		if (distributions == null) {
+			return pool.get((int) Distribution.nextLong(random, size));
+		}
+
+		// The distribution covers at most twice the values present, so about half of the draws are accepted in the worst case
+		final Distribution distribution = distributions[sizeClass(size)];
+		long age;
+
+		do {
+			age = distribution.next(random);
+		} while (age >= size);
+
+		return pool.getRecent(age);
+	}
+
+	public String toString() {
+		return token;
+	}
+
+	public String getName() {
+		return token;
+	}
+
+	public void compile(final Grammar<T> grammar) {
+		rule = grammar.getRule(ruleName);
+
+		if (rule == null) {
+			throw new IllegalArgumentException("Rule " + ruleName + " referenced by " + token + " does not exist.");
+		}
+	}
+
+	public boolean isConstant() {
+		return false;
+	}
+}
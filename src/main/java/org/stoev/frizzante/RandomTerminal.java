@@ -0,0 +1,389 @@
+package org.stoev.frizzante;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A built-in terminal that produces a random value, such as $int(1,1000,zipf=0.99), without any Java code in the grammar:
+ * <ul>
+ * <li> $int(min,max) - an integer between min and max, inclusive. $int alone stands for $int(0,2147483647);
+ * <li> $decimal(precision,scale) - a non-negative decimal number with up to precision digits, scale of which
+ * follow the decimal point. $decimal alone stands for $decimal(10,2);
+ * <li> $string(min,max) - a string of lowercase letters and digits, between min and max characters long.
+ * $string alone stands for $string(1,16);
+ * <li> $date(min,max) - a date between min and max, inclusive, written as YYYY-MM-DD.
+ * $date alone stands for $date(1970-01-01,2037-12-31);
+ * <li> $uuid - a random (version 4) UUID.
+ * </ul>
+ * All but $uuid take a Distribution as an optional last argument, e.g. $int(1,100,hotspot=0.2). It applies to the
+ * value, to the unscaled value of a decimal, and to the length of a string. The values are drawn from the random
+ * number generator of the Sentence, so they are reproducible from the sentence id.
+ *
+ * <p>Available with #option RANDOM_TERMINALS. One RandomTerminal is created for each distinct terminal in the grammar,
+ * the way rules are, and shared by all threads.
+**/
+
+final class RandomTerminal<T> implements Generatable<T> {
+	static final String TOKEN_PATTERN = "(?:\\$(?:int|decimal|string|date|uuid)(?:\\([^()]*\\))?(?![a-zA-Z0-9_]))";
+
+	private static final Pattern TOKEN = Pattern.compile("\\$([a-z]+)(?:\\(([^()]*)\\))?");
+	private static final Pattern DATE = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})");
+
+	private static final char[] STRING_CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final int MAX_DECIMAL_PRECISION = 18;
+	private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+	// Days between 0000-03-01, where the date arithmetic below starts its 400-year eras, and 1970-01-01
+	private static final long EPOCH_SHIFT = 719468;
+	private static final long DAYS_PER_ERA = 146097;
+
+	private enum Type {
+		INT,
+		DECIMAL,
+		STRING,
+		DATE,
+		UUID
+	};
+
+	private final String token;
+	private final Type type;
+	private final long min;
+	private final Distribution distribution;
+
+	// The number of digits after the decimal point of a $decimal
+	private final int scale;
+
+	RandomTerminal(final String t) {
+		token = t;
+
+		Matcher matcher = TOKEN.matcher(token);
+
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Malformed terminal " + token);
+		}
+
+		try {
+			type = Type.valueOf(matcher.group(1).toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown terminal " + token, e);
+		}
+
+		String[] arguments = new String[0];
+
+		if (matcher.group(2) != null && matcher.group(2).trim().length() > 0) {
+			arguments = matcher.group(2).split(",", -1);
+
+			for (int i = 0; i < arguments.length; i++) {
+				arguments[i] = arguments[i].trim();
+
+				if (arguments[i].length() == 0) {
+					throw new IllegalArgumentException("Terminal " + token + " has an empty argument.");
+				}
+			}
+		}
+
+		// A trailing argument that starts with a letter names the distribution
+
+		String distributionName = null;
+		int valueArguments = arguments.length;
+
+		if (valueArguments > 0 && Character.isLetter(arguments[valueArguments - 1].charAt(0))) {
+			distributionName = arguments[valueArguments - 1];
+			valueArguments--;
+		}
+
+		if (valueArguments != 0 && valueArguments != 2) {
+			throw new IllegalArgumentException("Terminal " + token + " takes either no arguments or a minimum and a maximum.");
+		}
+
+		final long max;
+		int s = 0;
+
+		switch (type) {
+			case INT:
+				min = parseLong(arguments, 0, valueArguments, 0);
+				max = parseLong(arguments, 1, valueArguments, Integer.MAX_VALUE);
+				break;
+			case DECIMAL:
+				int precision = (int) parseLong(arguments, 0, valueArguments, 10);
+				s = (int) parseLong(arguments, 1, valueArguments, 2);
+
+				if (precision < 1 || precision > MAX_DECIMAL_PRECISION || s < 0 || s > precision) {
+					throw new IllegalArgumentException("Terminal " + token + " must have a precision between 1 and " + MAX_DECIMAL_PRECISION + " and a scale no larger than its precision.");
+				}
+
+				min = 0;
+				max = powerOfTen(precision) - 1;
+				break;
+			case STRING:
+				min = parseLong(arguments, 0, valueArguments, 1);
+				max = parseLong(arguments, 1, valueArguments, 16);
+
+				if (min < 0 || max > MAX_STRING_LENGTH) {
+					throw new IllegalArgumentException("Terminal " + token + " must have a length between 0 and " + MAX_STRING_LENGTH + ".");
+				}
+
+				break;
+			case DATE:
+				min = parseDate(arguments, 0, valueArguments, "1970-01-01");
+				max = parseDate(arguments, 1, valueArguments, "2037-12-31");
+				break;
+			case UUID:
+				if (arguments.length != 0) {
+					throw new IllegalArgumentException("Terminal " + token + " does not take arguments.");
+				}
+
+				min = 0;
+				max = 0;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown terminal " + token);
+		}
+
+		scale = s;
+
+		// The size must fit in a long, which rules out only the most extreme $int ranges
+		if (max < min || max - min + 1 <= 0) {
+			throw new IllegalArgumentException("Terminal " + token + " does not have a valid range.");
+		}
+
+		if (distributionName == null) {
+			distribution = Distribution.uniform(max - min + 1);
+		} else {
+			distribution = Distribution.create(distributionName, max - min + 1);
+		}
+	}
+
+	static boolean isTerminal(final String elementString) {
+		return elementString.matches(TOKEN_PATTERN);
+	}
+
+	private long parseLong(final String[] arguments, final int index, final int count, final long defaultValue) {
+		if (count == 0) {
+			return defaultValue;
+		}
+
+		try {
+			return Long.parseLong(arguments[index]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid argument " + arguments[index] + " in terminal " + token, e);
+		}
+	}
+
+	private long parseDate(final String[] arguments, final int index, final int count, final String defaultValue) {
+		String dateString = defaultValue;
+
+		if (count > 0) {
+			dateString = arguments[index];
+		}
+
+		Matcher matcher = DATE.matcher(dateString);
+
+		if (matcher.matches()) {
+			int year = Integer.parseInt(matcher.group(1));
+			int month = Integer.parseInt(matcher.group(2));
+			int day = Integer.parseInt(matcher.group(3));
+
+			if (year >= 1 && month >= 1 && month <= 12 && day >= 1) {
+				long days = daysFromCivil(year, month, day);
+
+				// Catches days past the end of the month, such as 2001-02-29
+				if (new String(formatDate(days)).equals(dateString)) {
+					return days;
+				}
+			}
+		}
+
+		throw new IllegalArgumentException("Invalid date " + dateString + " in terminal " + token + ", expected YYYY-MM-DD.");
+	}
+
+	private static long powerOfTen(final int exponent) {
+		long result = 1;
+
+		for (int i = 0; i < exponent; i++) {
+			result = result * 10;
+		}
+
+		return result;
+	}
+
+	public void generate(final ThreadContext<T> threadContext, final Sentence<T> sentence) {
+		final Random random = sentence.getRandom();
+
+		if (type == Type.UUID) {
+			sentence.append(new String(formatUuid(random.nextLong(), random.nextLong())));
+		} else {
+			sentence.append(format(min + distribution.next(random), random));
+		}
+	}
+
+	private String format(final long value, final Random random) {
+		switch (type) {
+			case INT:
+				return Long.toString(value);
+			case DECIMAL:
+				return new String(formatDecimal(value));
+			case STRING:
+				char[] string = new char[(int) value];
+
+				for (int i = 0; i < string.length; i++) {
+					string[i] = STRING_CHARACTERS[random.nextInt(STRING_CHARACTERS.length)];
+				}
+
+				return new String(string);
+			case DATE:
+				return new String(formatDate(value));
+			default:
+				throw new IllegalStateException("Unknown terminal " + token);
+		}
+	}
+
+	private char[] formatDecimal(final long unscaledValue) {
+		final long divisor = powerOfTen(scale);
+		final String integerPart = Long.toString(unscaledValue / divisor);
+
+		if (scale == 0) {
+			return integerPart.toCharArray();
+		}
+
+		char[] decimal = new char[integerPart.length() + 1 + scale];
+		integerPart.getChars(0, integerPart.length(), decimal, 0);
+		decimal[integerPart.length()] = '.';
+
+		long fraction = unscaledValue % divisor;
+
+		for (int i = decimal.length - 1; i > integerPart.length(); i--) {
+			decimal[i] = (char) ('0' + fraction % 10);
+			fraction = fraction / 10;
+		}
+
+		return decimal;
+	}
+
+	private static char[] formatUuid(final long mostSignificantBits, final long leastSignificantBits) {
+		// Version 4 in the top nibble of the third group, and the IETF variant in the top bits of the fourth
+		final long high = (mostSignificantBits & 0xffffffffffff0fffL) | 0x0000000000004000L;
+		final long low = (leastSignificantBits & 0x3fffffffffffffffL) | 0x8000000000000000L;
+
+		char[] uuid = new char[36];
+		int position = 0;
+
+		for (int i = 0; i < 32; i++) {
+			if (i == 8 || i == 12 || i == 16 || i == 20) {
+				uuid[position++] = '-';
+			}
+
+			long bits = high;
+			int shift = 60 - 4 * i;
+
+			if (i >= 16) {
+				bits = low;
+				shift = 60 - 4 * (i - 16);
+			}
+
+			uuid[position++] = HEX_DIGITS[(int) ((bits >>> shift) & 0xf)];
+		}
+
+		return uuid;
+	}
+
+	/**
+	Days since 1970-01-01 for a date in the proleptic Gregorian calendar, for years from 1 onwards.
+	The algorithm is the one by Howard Hinnant, with years starting on March 1 so that leap days come last.
+	**/
+
+	private static long daysFromCivil(final int year, final int month, final int day) {
+		int y = year;
+		int shiftedMonth = month - 3;
+
+		if (month <= 2) {
+			y = y - 1;
+			shiftedMonth = month + 9;
+		}
+
+		final long era = y / 400;
+		final long yearOfEra = y - era * 400;
+		final long dayOfYear = (153 * shiftedMonth + 2) / 5 + day - 1;
+		final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+		return era * DAYS_PER_ERA + dayOfEra - EPOCH_SHIFT;
+	}
+
+	private static char[] formatDate(final long days) {
+		final long shiftedDays = days + EPOCH_SHIFT;
+		final long era = shiftedDays / DAYS_PER_ERA;
+		final long dayOfEra = shiftedDays - era * DAYS_PER_ERA;
+		final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+		final long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+
+		long year = yearOfEra + era * 400;
+		long month = shiftedMonth + 3;
+
+		if (shiftedMonth >= 10) {
+			month = shiftedMonth - 9;
+			year = year + 1;
+		}
+
+		char[] date = new char[10];
+		formatDigits(date, 0, year, 4);
+		date[4] = '-';
+		formatDigits(date, 5, month, 2);
+		date[7] = '-';
+		formatDigits(date, 8, day, 2);
+
+		return date;
+	}
+
+	private static void formatDigits(final char[] target, final int offset, final long value, final int digits) {
+		long remaining = value;
+
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			target[i] = (char) ('0' + remaining % 10);
+			remaining = remaining / 10;
+		}
+	}
+
+	/**
+	Returns the value at the start of the range, which SentenceSimplifier uses in place of random values
+	**/
+
+	String getSimplestValue() {
+		switch (type) {
+			case INT:
+			case DECIMAL:
+			case DATE:
+				return format(min, null);
+			case STRING:
+				char[] string = new char[(int) min];
+				Arrays.fill(string, STRING_CHARACTERS[0]);
+				return new String(string);
+			case UUID:
+				return new String(formatUuid(0, 0));
+			default:
+				throw new IllegalStateException("Unknown terminal " + token);
+		}
+	}
+
+	public String toString() {
+		return token;
+	}
+
+	public String getName() {
+		return token;
+	}
+
+	public void compile(final Grammar<T> grammar) {
+		// Nothing to compile, the arguments were checked by the constructor
+	}
+
+	public boolean isConstant() {
+		return false;
+	}
+}
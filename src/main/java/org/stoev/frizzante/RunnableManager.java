@@ -2,6 +2,7 @@ package org.stoev.frizzante;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 
 import java.util.Timer;
 import java.util.TimerTask;
@@ -40,6 +41,12 @@ public final class RunnableManager {
 		waitForThreads();
 		reapExceptions();
 
+		Map<String, Long> budgetHits = globalContext.getBudgetHits();
+
+		if (!budgetHits.isEmpty()) {
+			LOGGER.warn("Generation limits were reached, forced picks per rule: " + budgetHits);
+		}
+
 		LOGGER.info("Execution completed successfully.");
 	}
 
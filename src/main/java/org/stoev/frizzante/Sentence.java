@@ -7,6 +7,12 @@ import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.Random;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
 /**
  * This class holds the output from a random generation run.
  *
@@ -34,24 +40,62 @@ import java.util.Random;
 
 public final class Sentence<T> implements Iterable<T>, Appendable {
 	private final List<T> elements = new ArrayList<T>();
+
+	// The UTF-8 encoding of each element, if it is a grammar literal, or null
+	private final List<byte[]> encodedElements = new ArrayList<byte[]>();
 	private final Deque<Generatable<T>> generatableStack = new ArrayDeque<Generatable<T>>();
-	private final List<ProductionInstance<T>> productionInstances = new ArrayList<ProductionInstance<T>>();
+	private final DerivationTrace trace = new DerivationTrace();
+
+	// The grammar the productions in the trace belong to
+	private Grammar<T> grammar;
+
+	// Where failed() and succeeded() record their changes, as taken from the ThreadContext that generated the Sentence
+	private WeightDeltas<T> weightDeltas;
 
-	private final long id;
-	private final Random random;
+	private long id;
+	private final SentenceRandom random;
+	private final TraceLevel traceLevel;
+	private final GenerationBudget budget;
+
+	// The number of productions currently being generated and the bytes generated so far, as counted by GenerationBudget
+	private int depth;
+	private int bytes;
 
 	public static <S> Sentence<S> newSentence(final long i) {
-		return new Sentence<S>(i);
+		return newSentence(i, SentenceRandom.newDefault(), TraceLevel.FULL, GenerationBudget.UNLIMITED);
+	}
+
+	static <S> Sentence<S> newSentence(final long i, final SentenceRandom r, final TraceLevel t, final GenerationBudget b) {
+		Sentence<S> sentence = new Sentence<S>(i, r, t, b);
+		sentence.reset(i);
+		return sentence;
 	}
 
-	private Sentence(final long i) {
+	private Sentence(final long i, final SentenceRandom r, final TraceLevel t, final GenerationBudget b) {
 		id = i;
-		random = new Random(id);
+		random = r;
+		traceLevel = t;
+		budget = b;
+	}
 
-		// We reseed the PRNG here because id can be a small integer, which does not make for a good seed
-		// when doubles are being generated when picking a random grammar production
+	/**
+	Empties the Sentence and prepares it for generating the Sentence with the given id.
+
+	The result is the same as creating a new Sentence, but the memory already allocated
+	for the elements is reused, which matters in tight generation loops.
+	**/
+
+	public void reset(final long newId) {
+		id = newId;
 
-		random.setSeed(random.nextLong());
+		elements.clear();
+		encodedElements.clear();
+		generatableStack.clear();
+		trace.clear();
+		depth = 0;
+		bytes = 0;
+
+		random.seedFromId(id);
 	}
 
 	/**
@@ -67,9 +111,18 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 
 	The caller could use sentence.getClass().newInstance() instead, however this will require
 	catching exceptions. Our version is exception-free.
+
+	The new Sentence has the same id, but draws its random numbers from a stream split off
+	from the one of this Sentence, so the two do not make correlated choices.
 	**/
 	public Sentence<T> newInstance() {
-		return new Sentence<T>(id);
+		Sentence<T> sentence = new Sentence<T>(id, random.split(), traceLevel, budget);
+		sentence.grammar = grammar;
+		sentence.weightDeltas = weightDeltas;
+
+		// Cached values are generated in a separate Sentence, which should not be allowed to nest any deeper
+		sentence.depth = depth;
+		return sentence;
 	}
 
 	/**
@@ -80,6 +133,11 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 
 	public void add(final T element) {
 		elements.add(element);
+		encodedElements.add(null);
+
+		if (element instanceof CharSequence) {
+			bytes += ((CharSequence) element).length();
+		}
 	}
 
 	/**
@@ -91,6 +149,8 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 
 	void addAll(final Sentence<T> newSentence) {
 		elements.addAll(newSentence.elements);
+		encodedElements.addAll(newSentence.encodedElements);
+		bytes += newSentence.bytes;
 	}
 
 	/**
@@ -103,6 +163,22 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 	@SuppressWarnings("unchecked")
 	public void append(final String string) {
 		elements.add((T) string);
+		encodedElements.add(null);
+
+		if (string != null) {
+			bytes += string.length();
+		}
+	}
+
+	/**
+	Appends a string whose UTF-8 encoding is already known, so that writeTo() does not need to encode it again
+	**/
+
+	@SuppressWarnings("unchecked")
+	void appendEncoded(final String string, final byte[] encodedString) {
+		elements.add((T) string);
+		encodedElements.add(encodedString);
+		bytes += encodedString.length;
 	}
 
 	/**
@@ -115,6 +191,8 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 	@SuppressWarnings("unchecked")
 	public Appendable append(final CharSequence csq) {
 		elements.add((T) csq.toString());
+		encodedElements.add(null);
+		bytes += csq.length();
 		return this;
 	}
 
@@ -169,9 +247,84 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 		}
 	}
 
+	/**
+	Returns the number of bytes writeTo() will write
+	**/
+
+	public int getEncodedLength() {
+		int length = 0;
+
+		for (int i = 0; i < elements.size(); i++) {
+			length += getEncodedElement(i).length;
+		}
+
+		return length;
+	}
+
+	/**
+	Writes the Sentence, encoded as UTF-8, into a buffer. Elements that came from grammar literals
+	are copied from their pre-encoded form, so no intermediate String is built.
+
+	@throws java.nio.BufferOverflowException if the buffer has less than getEncodedLength() bytes remaining
+	**/
+
+	public void writeTo(final ByteBuffer buffer) {
+		for (int i = 0; i < elements.size(); i++) {
+			buffer.put(getEncodedElement(i));
+		}
+	}
+
+	/**
+	Writes the Sentence, encoded as UTF-8, to a channel. If the channel supports gathering writes, the
+	pre-encoded literals are passed to it directly without being copied into an intermediate buffer.
+	**/
+
+	public void writeTo(final WritableByteChannel channel) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[elements.size()];
+
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = ByteBuffer.wrap(getEncodedElement(i));
+		}
+
+		if (channel instanceof GatheringByteChannel) {
+			GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+
+			for (int i = 0; i < buffers.length; i++) {
+				// A single write may not drain all buffers, e.g. with non-blocking channels or full pipes
+				while (buffers[i].hasRemaining()) {
+					gatheringChannel.write(buffers, i, buffers.length - i);
+				}
+			}
+		} else {
+			for (ByteBuffer elementBuffer: buffers) {
+				while (elementBuffer.hasRemaining()) {
+					channel.write(elementBuffer);
+				}
+			}
+		}
+	}
+
+	private byte[] getEncodedElement(final int index) {
+		byte[] encodedElement = null;
+
+		// The element list can be modified directly via getElements(), in which case the encodings no longer line up
+
+		if (encodedElements.size() == elements.size()) {
+			encodedElement = encodedElements.get(index);
+		}
+
+		if (encodedElement == null) {
+			encodedElement = String.valueOf(elements.get(index)).getBytes(StandardCharsets.UTF_8);
+		}
+
+		return encodedElement;
+	}
+
 	void populate(final ThreadContext<T> threadContext, final Generatable<T> startingGeneratable) {
 		assert generatableStack.size() == 0;
 
+		grammar = threadContext.getGlobalContext().getGrammar();
+		weightDeltas = threadContext.getWeightDeltas();
 		generatableStack.push(startingGeneratable);
 
 		while (!generatableStack.isEmpty()) {
@@ -185,15 +338,51 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 	}
 
 	void enterProduction(final GrammarProduction<T> production) {
-		ProductionInstance<T> productionInstance = new ProductionInstance<T>(production, elements.size());
-		productionInstances.add(productionInstance);
+		// The fencepost records where the production ends and keeps track of the depth
 
-		GrammarFencepost<T> grammarFencepost = new GrammarFencepost<T>(productionInstance);
+		GrammarFencepost<T> grammarFencepost = new GrammarFencepost<T>(startProduction(production.getId()));
 		generatableStack.push(grammarFencepost);
 	}
 
-	void leaveProduction(final ProductionInstance<T> productionInstance) {
-		productionInstance.setEnd(elements.size() - 1);
+	void leaveProduction(final int handle) {
+		endProduction(handle);
+	}
+
+	/**
+	Records the start of a production without using the Generatable stack.
+
+	@return a handle to be passed to endProduction() once the production is complete
+	**/
+
+	int startProduction(final int productionId) {
+		depth++;
+
+		if (traceLevel == TraceLevel.NONE) {
+			return -1;
+		}
+
+		return trace.add(productionId, elements.size());
+	}
+
+	void endProduction(final int handle) {
+		depth--;
+
+		if (traceLevel == TraceLevel.FULL) {
+			trace.setEnd(handle, elements.size() - 1);
+		}
+	}
+
+	/**
+	Returns true if the Sentence has grown past one of the limits of its GenerationBudget, in which case
+	rules should pick their shortest terminating production
+	**/
+
+	boolean isOverBudget() {
+		return budget.isExceeded(depth, elements.size(), bytes);
+	}
+
+	GenerationBudget getBudget() {
+		return budget;
 	}
 
 	public List<T> getElements() {
@@ -208,22 +397,84 @@ public final class Sentence<T> implements Iterable<T>, Appendable {
 		return elements.size();
 	}
 
+	/**
+	Returns the productions used to generate the Sentence. The list is built from the
+	derivation trace on each call, so it should not be used in performance-sensitive code.
+	**/
+
 	public List<ProductionInstance<T>> getProductionInstances() {
+		List<ProductionInstance<T>> productionInstances = new ArrayList<ProductionInstance<T>>(trace.size());
+
+		for (int i = 0; i < trace.size(); i++) {
+			ProductionInstance<T> productionInstance = new ProductionInstance<T>(getTracedProduction(i), trace.getStart(i));
+
+			if (trace.wasProductive(i)) {
+				productionInstance.setEnd(trace.getEnd(i));
+			}
+
+			productionInstances.add(productionInstance);
+		}
+
 		return productionInstances;
 	}
 
+	DerivationTrace getTrace() {
+		return trace;
+	}
+
+	GrammarProduction<T> getTracedProduction(final int index) {
+		return grammar.getProduction(trace.getProductionId(index));
+	}
+
+	public TraceLevel getTraceLevel() {
+		return traceLevel;
+	}
+
+	private void checkTraceLevel(final TraceLevel requiredLevel, final String feature) {
+		if (traceLevel.compareTo(requiredLevel) < 0) {
+			throw new IllegalArgumentException(feature + " requires tracing level " + requiredLevel + " or above, but the Sentence was generated with " + traceLevel + ".");
+		}
+	}
+
+	void checkFullTrace(final String feature) {
+		checkTraceLevel(TraceLevel.FULL, feature);
+	}
+
+	/**
+	Demotes all productions used by the Sentence. Must be called from the thread that generated
+	the Sentence, as the change is recorded in its ThreadContext until the next merge.
+	**/
+
 	void failed(final double penalty) {
-		for (ProductionInstance<T> productionInstance: productionInstances) {
-			GrammarProduction<T> production = productionInstance.getProduction();
-			production.demote(penalty);
+		checkTraceLevel(TraceLevel.PRODUCTIONS, "Adaptive weights");
+
+		if (trace.size() == 0) {
+			return;
 		}
+
+		for (int i = 0; i < trace.size(); i++) {
+			weightDeltas.demote(getTracedProduction(i), penalty);
+		}
+
+		weightDeltas.feedbackCompleted();
 	}
 
+	/**
+	Promotes all productions used by the Sentence, with the same threading rules as failed()
+	**/
+
 	void succeeded(final double promotion) {
-		for (ProductionInstance<T> productionInstance: productionInstances) {
-			GrammarProduction<T> production = productionInstance.getProduction();
-			production.promote(promotion);
+		checkTraceLevel(TraceLevel.PRODUCTIONS, "Adaptive weights");
+
+		if (trace.size() == 0) {
+			return;
 		}
+
+		for (int i = 0; i < trace.size(); i++) {
+			weightDeltas.promote(getTracedProduction(i), promotion);
+		}
+
+		weightDeltas.feedbackCompleted();
 	}
 }
 
@@ -0,0 +1,11 @@
+package org.stoev.frizzante;
+
+/**
+ * Receives the Sentences generated by SentenceRange.parallelForEach().
+ *
+ * <p>It is called from several threads at once, and each Sentence is a new object that it can keep.
+**/
+
+public interface SentenceConsumer<T> {
+	void accept(Sentence<T> sentence);
+}
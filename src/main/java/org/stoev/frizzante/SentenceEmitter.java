@@ -0,0 +1,223 @@
+package org.stoev.frizzante;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates Sentences on several threads and writes them to a channel, each one followed by a delimiter,
+ * as used by App --emit to pipe Sentences into other tools.
+ *
+ * <p>In unordered mode, each thread picks ids as ThreadContext.newSentence() does, encodes the Sentences into
+ * a direct buffer of its own and writes the buffer out whole once it is full, so threads only contend for
+ * the channel once per buffer. In ordered mode, the ids from the start of the id range are generated by
+ * SentenceRange.forEachChunk() and the chunks are written in id order, so the output is the same on every run.
+ *
+ * <p>Emitting stops after the given number of Sentences or once duration() of the GlobalContext has passed,
+ * whichever comes first. In ordered mode, the chunks already being generated at that point are still written out.
+**/
+
+public final class SentenceEmitter<T> {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	// Unordered threads claim this many Sentences of the count at a time
+	private static final int CLAIM_SIZE = 256;
+
+	private final GlobalContext<T> globalContext;
+	private final WritableByteChannel channel;
+	private final byte[] delimiter;
+
+	private final AtomicLong sentenceCount = new AtomicLong();
+	private final AtomicLong byteCount = new AtomicLong();
+	private long elapsedNanos;
+	private volatile boolean stopped;
+
+	public SentenceEmitter(final GlobalContext<T> context, final WritableByteChannel c, final byte[] d) {
+		globalContext = context;
+		channel = c;
+		delimiter = d.clone();
+	}
+
+	/**
+	Emits up to the given number of Sentences, returning once they have all been written
+	**/
+
+	public void emit(final long count, final boolean ordered) throws IOException {
+		Timer timer = new Timer(true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				stopped = true;
+			}
+		}, globalContext.getDuration() * 1000L);
+
+		long start = System.nanoTime();
+
+		try {
+			if (ordered) {
+				emitOrdered(count);
+			} else {
+				emitUnordered(count);
+			}
+		} finally {
+			timer.cancel();
+			elapsedNanos = System.nanoTime() - start;
+		}
+	}
+
+	public long getSentenceCount() {
+		return sentenceCount.get();
+	}
+
+	public long getByteCount() {
+		return byteCount.get();
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	Returns the number of Sentences written, the number of bytes and the rate of each
+	**/
+
+	public String getReport() {
+		double seconds = Math.max(elapsedNanos, 1) / 1e9;
+
+		return String.format(Locale.ROOT, "Emitted %d sentences, %d bytes in %.2f seconds: %.0f sentences/sec, %.2f MB/sec",
+			getSentenceCount(), getByteCount(), seconds, getSentenceCount() / seconds, getByteCount() / seconds / (1 << 20));
+	}
+
+	private void emitOrdered(final long count) throws IOException {
+		SentenceRange<T> range = globalContext.sentences(globalContext.getIdRangeStart(), Math.min(count, globalContext.sentences().size()));
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, globalContext.getThreadCount()));
+
+		try {
+			range.forEachChunk(pool, false, delimiter, new SentenceRange.ChunkConsumer() {
+				@Override
+				public boolean accept(final SentenceRange.Chunk chunk) throws IOException {
+					sentenceCount.addAndGet(chunk.getOffsets().length);
+					byteCount.addAndGet(chunk.getData().remaining());
+					writeFully(chunk.getData());
+					return !stopped;
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void emitUnordered(final long count) throws IOException {
+		final AtomicLong claimed = new AtomicLong();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final List<EmitterThread> emitters = new ArrayList<EmitterThread>();
+
+		for (int i = 1; i <= Math.max(1, globalContext.getThreadCount()); i++) {
+			EmitterThread emitter = new EmitterThread(globalContext.newThreadContext(i), claimed, count);
+			Thread thread = new Thread(emitter);
+
+			emitters.add(emitter);
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread: threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException interruptedException) {
+				stopped = true;
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		for (EmitterThread emitter: emitters) {
+			if (emitter.failure != null) {
+				throw emitter.failure;
+			}
+		}
+	}
+
+	private void writeFully(final ByteBuffer buffer) throws IOException {
+		// Buffers from different threads must not be interleaved, even if the channel takes them in several writes
+		synchronized (channel) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	private final class EmitterThread implements Runnable {
+		private final ThreadContext<T> threadContext;
+		private final AtomicLong claimed;
+		private final long count;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private long bufferedSentences;
+		private IOException failure;
+
+		EmitterThread(final ThreadContext<T> t, final AtomicLong c, final long n) {
+			threadContext = t;
+			claimed = c;
+			count = n;
+		}
+
+		@Override
+		public void run() {
+			final Sentence<T> sentence = threadContext.newSentence();
+
+			try {
+				while (!stopped) {
+					long first = claimed.getAndAdd(CLAIM_SIZE);
+
+					if (first >= count || first < 0) {
+						break;
+					}
+
+					long batch = Math.min(CLAIM_SIZE, count - first);
+
+					for (long i = 0; i < batch && !stopped; i++) {
+						threadContext.generateInto(sentence);
+						put(sentence);
+					}
+				}
+
+				flush();
+			} catch (IOException ioException) {
+				failure = ioException;
+				stopped = true;
+			}
+		}
+
+		private void put(final Sentence<T> sentence) throws IOException {
+			int length = sentence.getEncodedLength() + delimiter.length;
+
+			if (buffer.remaining() < length) {
+				flush();
+
+				if (buffer.capacity() < length) {
+					buffer = ByteBuffer.allocateDirect(length);
+				}
+			}
+
+			sentence.writeTo(buffer);
+			buffer.put(delimiter);
+			bufferedSentences++;
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			byteCount.addAndGet(buffer.remaining());
+			writeFully(buffer);
+			buffer.clear();
+
+			sentenceCount.addAndGet(bufferedSentences);
+			bufferedSentences = 0;
+		}
+	}
+}
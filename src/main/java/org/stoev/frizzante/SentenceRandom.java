@@ -0,0 +1,52 @@
+package org.stoev.frizzante;
+
+import java.util.Random;
+
+/**
+ * The source of random numbers for a single Sentence.
+ *
+ * <p>A SentenceRandom is only ever used by the thread that generates its Sentence, so
+ * implementations need not be thread-safe. They must however be deterministic: after
+ * seedFromId(), the same id must always produce the same sequence, as this is what makes
+ * sentence ids reproducible.
+ *
+ * <p>Two implementations are provided:
+ * <ul>
+ * <li> newDefault() - an unsynchronized SplitMix64 generator;
+ * <li> newLegacy() - a java.util.Random seeded as in previous versions, so that existing
+ * sentence ids continue to produce the same Sentences.
+ * </ul>
+ *
+ * @see GlobalContext.ContextBuilder#sentenceRandom(SentenceRandom)
+**/
+
+public abstract class SentenceRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	public static SentenceRandom newDefault() {
+		return new SplitMixRandom();
+	}
+
+	public static SentenceRandom newLegacy() {
+		return new LegacyRandom();
+	}
+
+	/**
+	Positions the generator at the start of the sequence for the Sentence with the given id
+	**/
+
+	public abstract void seedFromId(long id);
+
+	/**
+	Creates an independent generator for a child Sentence, such as a cached rule value.
+	The parent generator may advance as a result.
+	**/
+
+	public abstract SentenceRandom split();
+
+	/**
+	Creates an unseeded generator of the same kind, to be used for a new Sentence
+	**/
+
+	public abstract SentenceRandom newInstance();
+}
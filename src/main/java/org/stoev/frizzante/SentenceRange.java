@@ -0,0 +1,295 @@
+package org.stoev.frizzante;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Sentences for a contiguous range of sentence ids, as returned by GlobalContext.sentences().
+ *
+ * <p>Each Sentence is generated from its id alone, and the cached values of the thread are cleared before each
+ * one, so a given id produces the same Sentence whether it is generated by iterator() or by any of the workers
+ * of parallelForEach(). Grammars that use $sample() or the Random of the ThreadContext in Java code are the
+ * exception, as those depend on what the other threads have done.
+ *
+ * <p>parallelForEach() splits the range in halves until there are a few pieces per worker of the ForkJoinPool,
+ * so the pieces that finish early are stolen by idle workers. Each worker uses its own ThreadContext.
+ *
+ * <p>forEachChunk() instead encodes chunks of consecutive ids in parallel and hands them over in id order, for
+ * CorpusWriter and SentenceEmitter, whose output must not depend on the number of workers.
+**/
+
+public final class SentenceRange<T> implements Iterable<Sentence<T>> {
+	// How many pieces each worker gets, so that the load evens out if some Sentences take longer than others
+	private static final int PIECES_PER_WORKER = 4;
+
+	// forEachChunk() keeps this many chunks per worker in flight, so ranges larger than memory can be encoded
+	private static final int CHUNK_SENTENCES = 4096;
+	private static final int CHUNKS_PER_WORKER = 4;
+
+	// The initial buffer size of a chunk, per Sentence. The buffer grows as needed.
+	private static final int ESTIMATED_ENCODED_LENGTH = 64;
+
+	private final GlobalContext<T> globalContext;
+	private final long start;
+	private final long count;
+
+	SentenceRange(final GlobalContext<T> context, final long s, final long c) {
+		if (c < 0) {
+			throw new IllegalArgumentException("Sentence count can not be negative.");
+		}
+
+		if (s > Long.MAX_VALUE - c) {
+			throw new IllegalArgumentException("Sentence id range goes past Long.MAX_VALUE.");
+		}
+
+		globalContext = context;
+		start = s;
+		count = c;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long size() {
+		return count;
+	}
+
+	/**
+	Generates the Sentences one at a time in the calling thread, in id order
+	**/
+
+	@Override
+	public Iterator<Sentence<T>> iterator() {
+		return new Iterator<Sentence<T>>() {
+			private final ThreadContext<T> threadContext = globalContext.newThreadContext();
+			private long next = start;
+
+			@Override
+			public boolean hasNext() {
+				return next < start + count;
+			}
+
+			@Override
+			public Sentence<T> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return generate(threadContext, next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	Generates the Sentences on a new ForkJoinPool with one worker per processor, in no particular order.
+	Returns once all of them have been passed to the consumer.
+	**/
+
+	public void parallelForEach(final SentenceConsumer<T> consumer) {
+		ForkJoinPool pool = new ForkJoinPool();
+
+		try {
+			parallelForEach(consumer, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	Generates the Sentences on the given ForkJoinPool, in no particular order
+	**/
+
+	public void parallelForEach(final SentenceConsumer<T> consumer, final ForkJoinPool pool) {
+		if (count == 0) {
+			return;
+		}
+
+		long threshold = Math.max(1, count / ((long) pool.getParallelism() * PIECES_PER_WORKER));
+		pool.invoke(new Piece(consumer, threshold, new WorkerContexts(), start, count));
+	}
+
+	/**
+	Receives the encoded chunks of forEachChunk(), in id order
+	**/
+
+	interface ChunkConsumer {
+		/**
+		@return false if no further chunks should be generated. The chunks already being generated are still passed on.
+		**/
+
+		boolean accept(Chunk chunk) throws IOException;
+	}
+
+	/**
+	The encoded Sentences of a chunk of consecutive ids, and where the encoding of each one starts in the data
+	**/
+
+	static final class Chunk {
+		private final ByteBuffer data;
+		private final int[] offsets;
+
+		Chunk(final ByteBuffer d, final int[] o) {
+			data = d;
+			offsets = o;
+		}
+
+		ByteBuffer getData() {
+			return data;
+		}
+
+		int[] getOffsets() {
+			return offsets;
+		}
+	}
+
+	/**
+	Generates the Sentences in chunks of consecutive ids on the given ForkJoinPool and passes the chunks to the consumer
+	in id order, on the calling thread. Each Sentence is encoded as its length, if lengthPrefix is set, followed by its
+	UTF-8 bytes and the delimiter. Only a few chunks per worker are in flight at any time.
+	**/
+
+	void forEachChunk(final ForkJoinPool pool, final boolean lengthPrefix, final byte[] delimiter, final ChunkConsumer consumer) throws IOException {
+		final int maxPending = pool.getParallelism() * CHUNKS_PER_WORKER;
+		final Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>();
+		final WorkerContexts workerContexts = new WorkerContexts();
+		long nextChunk = 0;
+		boolean accepting = true;
+
+		while ((nextChunk < count && accepting) || !pending.isEmpty()) {
+			while (nextChunk < count && accepting && pending.size() < maxPending) {
+				long chunkCount = Math.min(CHUNK_SENTENCES, count - nextChunk);
+				pending.addLast(pool.submit(new ChunkTask(workerContexts, start + nextChunk, chunkCount, lengthPrefix, delimiter)));
+				nextChunk += chunkCount;
+			}
+
+			if (!consumer.accept(pending.removeFirst().join())) {
+				accepting = false;
+			}
+		}
+	}
+
+	private Sentence<T> generate(final ThreadContext<T> threadContext, final long id) {
+		Sentence<T> sentence = globalContext.sentenceFromId(id);
+		threadContext.clearCachedValues();
+		threadContext.generate(sentence);
+		return sentence;
+	}
+
+	/**
+	One ThreadContext per worker thread, for the duration of a single parallelForEach() or forEachChunk() call
+	**/
+
+	private final class WorkerContexts extends ThreadLocal<ThreadContext<T>> {
+		private final AtomicInteger nextContextId = new AtomicInteger(1);
+
+		@Override
+		protected ThreadContext<T> initialValue() {
+			return globalContext.newThreadContext(nextContextId.getAndIncrement());
+		}
+	}
+
+	private final class Piece extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final SentenceConsumer<T> consumer;
+		private final long threshold;
+		private final WorkerContexts workerContexts;
+		private final long pieceStart;
+		private final long pieceCount;
+
+		Piece(final SentenceConsumer<T> c, final long t, final WorkerContexts w, final long s, final long n) {
+			consumer = c;
+			threshold = t;
+			workerContexts = w;
+			pieceStart = s;
+			pieceCount = n;
+		}
+
+		@Override
+		protected void compute() {
+			if (pieceCount <= threshold) {
+				ThreadContext<T> threadContext = workerContexts.get();
+
+				for (long id = pieceStart; id < pieceStart + pieceCount; id++) {
+					consumer.accept(generate(threadContext, id));
+				}
+			} else {
+				long half = pieceCount / 2;
+
+				invokeAll(
+					new Piece(consumer, threshold, workerContexts, pieceStart, half),
+					new Piece(consumer, threshold, workerContexts, pieceStart + half, pieceCount - half)
+				);
+			}
+		}
+	}
+
+	private final class ChunkTask implements Callable<Chunk> {
+		private final WorkerContexts workerContexts;
+		private final long chunkStart;
+		private final int chunkCount;
+		private final boolean lengthPrefix;
+		private final byte[] delimiter;
+
+		ChunkTask(final WorkerContexts w, final long s, final long n, final boolean l, final byte[] d) {
+			workerContexts = w;
+			chunkStart = s;
+			chunkCount = (int) n;
+			lengthPrefix = l;
+			delimiter = d;
+		}
+
+		@Override
+		public Chunk call() {
+			ThreadContext<T> threadContext = workerContexts.get();
+			int[] offsets = new int[chunkCount];
+			ByteBuffer data = ByteBuffer.allocate(offsets.length * ESTIMATED_ENCODED_LENGTH);
+			int prefixLength = 0;
+			int index = 0;
+
+			if (lengthPrefix) {
+				prefixLength = Integer.SIZE / Byte.SIZE;
+			}
+
+			for (long id = chunkStart; id < chunkStart + chunkCount; id++) {
+				Sentence<T> sentence = generate(threadContext, id);
+				int length = sentence.getEncodedLength();
+				int recordLength = prefixLength + length + delimiter.length;
+
+				if (data.remaining() < recordLength) {
+					ByteBuffer larger = ByteBuffer.allocate(Math.max(data.capacity() * 2, data.position() + recordLength));
+					data.flip();
+					larger.put(data);
+					data = larger;
+				}
+
+				offsets[index++] = data.position();
+
+				if (lengthPrefix) {
+					data.putInt(length);
+				}
+
+				sentence.writeTo(data);
+				data.put(delimiter);
+			}
+
+			data.flip();
+			return new Chunk(data, offsets);
+		}
+	}
+}
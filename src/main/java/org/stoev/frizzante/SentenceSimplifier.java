@@ -10,7 +10,7 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 
 	private Iterator<Sentence<T>> iterator;
 	private List<T> originalElements;
-	private List<ProductionInstance<T>> productionInstances;
+	private DerivationTrace trace;
 
 	private final List<ProductionStatus> productionStatus;
 	private int currentPosition = -1; // "-1" means the Iterator has not been Instanced yet
@@ -24,22 +24,24 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 	};
 
 	SentenceSimplifier(final Sentence<T> orig) {
+		orig.checkFullTrace("SentenceSimplifier");
+
 		originalSentence = orig;
 		originalElements = originalSentence.getElements();
-		productionInstances = originalSentence.getProductionInstances();
-		productionStatus = new ArrayList<ProductionStatus>(productionInstances.size());
+		trace = originalSentence.getTrace();
+		productionStatus = new ArrayList<ProductionStatus>(trace.size());
 
 		// Loop through the productions and categorize them as per the ProductionStatus enum above
 
-		for (ProductionInstance<T> productionInstance : productionInstances) {
-			if (!productionInstance.wasProductive()) {
+		for (int i = 0; i < trace.size(); i++) {
+			if (!trace.wasProductive(i)) {
 				productionStatus.add(ProductionStatus.EMPTY);
 			} else {
-				GrammarProduction<T> production = productionInstance.getProduction();
+				GrammarProduction<T> production = originalSentence.getTracedProduction(i);
 				GrammarRule<T> rule = production.getParent();
 				Sentence<T> shortestConstantSentence = rule.getShortestConstantSentence();
 
-				if (shortestConstantSentence == null || rule.getProductionCount() == 1) {
+				if (shortestConstantSentence == null || !rule.hasAlternatives()) {
 					productionStatus.add(ProductionStatus.NONMINIMIZABLE);
 				} else {
 					productionStatus.add(ProductionStatus.ORIGINAL);
@@ -47,7 +49,7 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 			}
 		}
 
-		assert productionInstances.size() == productionStatus.size();
+		assert trace.size() == productionStatus.size();
 	}
 
 	Sentence<T> getCurrentSentence() {
@@ -65,30 +67,28 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 
 		// Then go though the productions and modify the output as per the status of the individual productions
 
-		for (int i = 0; i < productionInstances.size(); i++) {
-			ProductionInstance<T> productionInstance = productionInstances.get(i);
-
+		for (int i = 0; i < trace.size(); i++) {
 			switch(productionStatus.get(i)) {
 				case EMPTY:
 				case ORIGINAL:
 				case NONMINIMIZABLE:
 					break;
 				case REMOVED:
-					for (int x = productionInstance.getStart(); x <= productionInstance.getEnd(); x++) {
+					for (int x = trace.getStart(i); x <= trace.getEnd(i); x++) {
 						elementInOutput.set(x, false);
 	                                }
 
 					break;
 				case REPLACED:
-					for (int x = productionInstance.getStart(); x <= productionInstance.getEnd(); x++) {
+					for (int x = trace.getStart(i); x <= trace.getEnd(i); x++) {
 						elementInOutput.set(x, false);
 	                                }
 
-					GrammarProduction<T> production = productionInstance.getProduction();
+					GrammarProduction<T> production = originalSentence.getTracedProduction(i);
 					GrammarRule<T> rule = production.getParent();
 					Sentence<T> shortestConstantSentence = rule.getShortestConstantSentence();
 
-					constantSubstitutions.set(productionInstance.getStart(), shortestConstantSentence);
+					constantSubstitutions.set(trace.getStart(i), shortestConstantSentence);
 
 					break;
 				default:
@@ -113,17 +113,14 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 	void succeeded() {
 		assert productionStatus.get(currentPosition) == ProductionStatus.REPLACED;
 
-		ProductionInstance<T> currentProductionInstance = productionInstances.get(currentPosition);
-
-		if (currentProductionInstance.wasProductive()) {
+		if (trace.wasProductive(currentPosition)) {
 			// Mark as REMOVED all productions that are completely enclosed within the current one
 
-			for (int i = currentPosition + 1; i < productionInstances.size(); i++) {
-				ProductionInstance<T> productionInstance = productionInstances.get(i);
+			for (int i = currentPosition + 1; i < trace.size(); i++) {
 				if (
-					productionInstance.wasProductive()
-					&& productionInstance.getStart() >= currentProductionInstance.getStart()
-					&& productionInstance.getEnd() <= currentProductionInstance.getEnd()
+					trace.wasProductive(i)
+					&& trace.getStart(i) >= trace.getStart(currentPosition)
+					&& trace.getEnd(i) <= trace.getEnd(currentPosition)
 				) {
 					productionStatus.set(i, ProductionStatus.REMOVED);
 				}
@@ -143,7 +140,7 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 				@Override
 				public boolean hasNext() {
 					// Check if there are any productions that are potential targets for minimization
-					for (int i = currentPosition + 1; i < productionInstances.size(); i++) {
+					for (int i = currentPosition + 1; i < trace.size(); i++) {
 						if (productionStatus.get(i) == ProductionStatus.ORIGINAL) {
 							return true;
 						}
@@ -159,7 +156,7 @@ public final class SentenceSimplifier<T> implements Iterable<Sentence<T>> {
 					}
 
 					// We advance the position to the next production that can be worked on
-					for (currentPosition++; currentPosition < productionInstances.size(); currentPosition++) {
+					for (currentPosition++; currentPosition < trace.size(); currentPosition++) {
 						if (productionStatus.get(currentPosition) == ProductionStatus.ORIGINAL) {
 							productionStatus.set(currentPosition, ProductionStatus.REPLACED);
 							break;
@@ -0,0 +1,258 @@
+package org.stoev.frizzante;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Computes the shortest derivation of every rule of a compiled grammar, using Knuth's generalization of
+ * Dijkstra's algorithm to context-free grammars.
+ *
+ * <p>The length of a derivation is the number of characters in its literals. The single production of a repetition
+ * counts as its element repeated the smallest number of times, with separators in between. A production becomes a candidate
+ * once the shortest derivations of all rules it references are known, and the cheapest candidate overall
+ * is always final, as lengths can only grow when productions are combined. Rules that can never terminate
+ * are left without a derivation.
+ *
+ * <p>Two tables are computed:
+ * <ul>
+ * <li> the shortest terminating production of each rule, where InlineJava, visitors and cached values count
+ * as one character, since their output is only known at generation time;
+ * <li> the shortest constant sentence of each rule, which may only use literals, rules and RandomTerminals, the
+ * latter with their simplest value, so that it can be expanded in advance. This is what SentenceSimplifier substitutes for the productions it removes.
+ * </ul>
+ * Both are stored in the GrammarRule objects while the grammar is being compiled and are not modified afterwards,
+ * so they can be read from any thread.
+**/
+
+final class ShortestDerivations<T> {
+	private static final long EXTERNAL_LENGTH = 1;
+
+	// PriorityQueue only takes a Comparator along with a capacity before Java 8, so this is its default capacity
+	private static final int INITIAL_CAPACITY = 11;
+
+	private final List<GrammarRule<T>> rules;
+
+	// For each rule, the productions that reference it, once for each reference
+	private final Map<GrammarRule<T>, List<GrammarProduction<T>>> references = new IdentityHashMap<GrammarRule<T>, List<GrammarProduction<T>>>();
+
+	private ShortestDerivations(final List<GrammarRule<T>> r) {
+		rules = r;
+
+		for (GrammarRule<T> rule: rules) {
+			references.put(rule, new ArrayList<GrammarProduction<T>>());
+		}
+
+		for (GrammarRule<T> rule: rules) {
+			for (GrammarProduction<T> production: rule.getProductions()) {
+				if (getRepeatCount(production) == 0) {
+					continue;
+				}
+
+				for (Generatable<T> element: production.getElements()) {
+					List<GrammarProduction<T>> referencingProductions = references.get(element);
+
+					if (referencingProductions != null) {
+						referencingProductions.add(production);
+					}
+				}
+			}
+		}
+	}
+
+	static <T> void compute(final List<GrammarRule<T>> rules) {
+		ShortestDerivations<T> shortestDerivations = new ShortestDerivations<T>(rules);
+
+		Map<GrammarRule<T>, GrammarProduction<T>> terminatingProductions = shortestDerivations.findShortestProductions(true);
+		List<GrammarRule<T>> constantOrder = new ArrayList<GrammarRule<T>>();
+		Map<GrammarRule<T>, GrammarProduction<T>> constantProductions = shortestDerivations.findShortestProductions(false, constantOrder);
+
+		// Rules are expanded in the order their derivations became final, so the
+		// rules each one references have always been expanded already
+
+		Map<GrammarRule<T>, Sentence<T>> constantSentences = new IdentityHashMap<GrammarRule<T>, Sentence<T>>();
+
+		for (GrammarRule<T> rule: constantOrder) {
+			GrammarProduction<T> constantProduction = constantProductions.get(rule);
+			GrammarLiteral<T> separator = getSeparator(constantProduction);
+			Sentence<T> constantSentence = Sentence.newSentence(0);
+
+			for (int i = 0; i < getRepeatCount(constantProduction); i++) {
+				if (i > 0 && separator != null) {
+					separator.appendTo(constantSentence);
+				}
+
+				for (Generatable<T> element: constantProduction.getElements()) {
+					if (element instanceof GrammarLiteral) {
+						((GrammarLiteral<T>) element).appendTo(constantSentence);
+					} else if (element instanceof RandomTerminal) {
+						constantSentence.append(((RandomTerminal<T>) element).getSimplestValue());
+					} else {
+						constantSentence.addAll(constantSentences.get(element));
+					}
+				}
+			}
+
+			constantSentences.put(rule, constantSentence);
+		}
+
+		for (GrammarRule<T> rule: rules) {
+			GrammarProduction<T> terminatingProduction = terminatingProductions.get(rule);
+			int terminatingIndex = -1;
+
+			if (terminatingProduction != null) {
+				terminatingIndex = terminatingProduction.getIndex();
+			}
+
+			rule.setShortestDerivation(terminatingIndex, constantSentences.get(rule));
+		}
+	}
+
+	private Map<GrammarRule<T>, GrammarProduction<T>> findShortestProductions(final boolean allowExternals) {
+		return findShortestProductions(allowExternals, new ArrayList<GrammarRule<T>>());
+	}
+
+	private Map<GrammarRule<T>, GrammarProduction<T>> findShortestProductions(final boolean allowExternals, final List<GrammarRule<T>> finalOrder) {
+		Map<GrammarRule<T>, GrammarProduction<T>> shortestProductions = new IdentityHashMap<GrammarRule<T>, GrammarProduction<T>>();
+
+		// The number of references to rules whose derivation is not yet known, and the length of the parts that are
+
+		Map<GrammarProduction<T>, Integer> pendingReferences = new IdentityHashMap<GrammarProduction<T>, Integer>();
+		Map<GrammarProduction<T>, Long> knownLengths = new IdentityHashMap<GrammarProduction<T>, Long>();
+		PriorityQueue<Candidate<T>> candidates = new PriorityQueue<Candidate<T>>(INITIAL_CAPACITY, new CandidateComparator<T>());
+
+		for (GrammarRule<T> rule: rules) {
+			for (GrammarProduction<T> production: rule.getProductions()) {
+				int repeatCount = getRepeatCount(production);
+				int pending = 0;
+				long length = 0;
+				boolean blocked = false;
+
+				if (repeatCount == 0) {
+					candidates.add(new Candidate<T>(production, 0));
+					continue;
+				}
+
+				for (Generatable<T> element: production.getElements()) {
+					if (element instanceof GrammarLiteral) {
+						length += element.getName().length();
+					} else if (element instanceof RandomTerminal) {
+						length += ((RandomTerminal<T>) element).getSimplestValue().length();
+					} else if (references.containsKey(element)) {
+						pending++;
+					} else if (allowExternals) {
+						length += EXTERNAL_LENGTH;
+					} else {
+						blocked = true;
+					}
+				}
+
+				if (blocked) {
+					continue;
+				}
+
+				length = length * repeatCount + getSeparatorLength(production) * (repeatCount - 1);
+
+				if (pending == 0) {
+					candidates.add(new Candidate<T>(production, length));
+				} else {
+					pendingReferences.put(production, pending);
+					knownLengths.put(production, length);
+				}
+			}
+		}
+
+		while (!candidates.isEmpty()) {
+			Candidate<T> candidate = candidates.poll();
+			GrammarRule<T> rule = candidate.production.getParent();
+
+			if (shortestProductions.containsKey(rule)) {
+				continue;
+			}
+
+			shortestProductions.put(rule, candidate.production);
+			finalOrder.add(rule);
+
+			for (GrammarProduction<T> production: references.get(rule)) {
+				Integer pending = pendingReferences.get(production);
+
+				if (pending == null) {
+					// Blocked by an external element
+					continue;
+				}
+
+				long length = knownLengths.get(production) + candidate.length * getRepeatCount(production);
+				knownLengths.put(production, length);
+				pendingReferences.put(production, pending - 1);
+
+				if (pending == 1) {
+					candidates.add(new Candidate<T>(production, length));
+				}
+			}
+		}
+
+		return shortestProductions;
+	}
+
+	/**
+	Returns the number of times the elements of the production appear in its shortest expansion, which is
+	the smallest count for the production of a repetition
+	**/
+
+	private static <T> int getRepeatCount(final GrammarProduction<T> production) {
+		if (production.getParent() instanceof GrammarRepetition) {
+			return ((GrammarRepetition<T>) production.getParent()).getMinCount();
+		} else {
+			return 1;
+		}
+	}
+
+	private static <T> GrammarLiteral<T> getSeparator(final GrammarProduction<T> production) {
+		if (production.getParent() instanceof GrammarRepetition) {
+			return ((GrammarRepetition<T>) production.getParent()).getSeparator();
+		} else {
+			return null;
+		}
+	}
+
+	private static <T> long getSeparatorLength(final GrammarProduction<T> production) {
+		GrammarLiteral<T> separator = getSeparator(production);
+
+		if (separator == null) {
+			return 0;
+		} else {
+			return separator.getName().length();
+		}
+	}
+
+	private static final class Candidate<T> {
+		private final GrammarProduction<T> production;
+		private final long length;
+
+		Candidate(final GrammarProduction<T> p, final long l) {
+			production = p;
+			length = l;
+		}
+	}
+
+	/**
+	Orders candidates by length, and among equally short productions, the one listed first in the grammar wins
+	**/
+
+	private static final class CandidateComparator<T> implements Comparator<Candidate<T>>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public int compare(final Candidate<T> first, final Candidate<T> second) {
+			if (first.length != second.length) {
+				return Long.compare(first.length, second.length);
+			}
+
+			return Integer.compare(first.production.getId(), second.production.getId());
+		}
+	}
+}
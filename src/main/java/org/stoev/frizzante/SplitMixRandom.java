@@ -0,0 +1,84 @@
+package org.stoev.frizzante;
+
+/**
+ * The SplitMix64 generator, as used by java.util.SplittableRandom.
+ *
+ * <p>Unlike java.util.Random, the state is a plain long rather than an AtomicLong, so
+ * no compare-and-swap is performed for each number generated.
+**/
+
+final class SplitMixRandom extends SentenceRandom {
+	private static final long serialVersionUID = 1L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	// Not initialized here, as java.util.Random calls setSeed() from its constructor
+	private long state;
+
+	@Override
+	public void seedFromId(final long id) {
+		// Ids are often small consecutive integers, so they are mixed before use
+		state = mix64(id);
+	}
+
+	@Override
+	public SentenceRandom split() {
+		SplitMixRandom child = new SplitMixRandom();
+		child.state = nextLong();
+		return child;
+	}
+
+	@Override
+	public SentenceRandom newInstance() {
+		return new SplitMixRandom();
+	}
+
+	@Override
+	public void setSeed(final long seed) {
+		state = seed;
+	}
+
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix64(state);
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	java.util.Random keeps the second of each pair of Gaussians for the next call, and setSeed() here does
+	not clear it, so a reused Sentence would start from the spare value of the previous id
+	**/
+
+	@Override
+	public double nextGaussian() {
+		return Distribution.nextGaussian(this);
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	@Override
+	protected int next(final int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	private static long mix64(final long value) {
+		long z = value;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
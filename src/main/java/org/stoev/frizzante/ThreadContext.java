@@ -1,8 +1,7 @@
 package org.stoev.frizzante;
 
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Map;
-import java.util.HashMap;
 
 public final class ThreadContext<T> {
 	private final GlobalContext<T> globalContext;
@@ -10,7 +9,15 @@ public final class ThreadContext<T> {
 	private final Random random;
 	private final int contextId;
 
-	private final Map<String, Sentence<T>> ruleCache = new HashMap<String, Sentence<T>>();
+	// The last value generated by each cached rule, indexed by the slot the grammar assigned to the rule
+	private Sentence<T>[] ruleCache;
+	private final IntStack programStack = new IntStack();
+	private final WeightDeltas<T> weightDeltas;
+
+	// With IdMode.PERMUTED, the positions in the permutation that belong to this thread and the next one to use
+	private long idSliceStart;
+	private long idSliceSize;
+	private long idPosition;
 
 	public static <T> ThreadContext<T> newThreadContext(final GlobalContext<T> globalContext, final int contextId) {
                 return new ThreadContext<T>(globalContext, contextId);
@@ -21,10 +28,42 @@ public final class ThreadContext<T> {
 		this.randomSeed = globalContext.getRandom().nextLong();
 		this.random = new Random(randomSeed);
 		this.contextId = contextId;
+		this.ruleCache = newRuleCache(globalContext.getGrammar());
+		this.weightDeltas = new WeightDeltas<T>(globalContext.getWeightMergeInterval());
+
+		if (globalContext.getIdPermutation() != null) {
+			assignIdSlice(globalContext.getIdPermutation().size(), Math.max(1, globalContext.getThreadCount()));
+		}
+	}
+
+	/**
+	Splits the range into one slice per thread and takes the slice for this context id. Context ids past the
+	thread count wrap around, so contexts created outside of run() share the slices of the running threads.
+	**/
+
+	private void assignIdSlice(final long rangeSize, final int threadCount) {
+		int slice = (((contextId - 1) % threadCount) + threadCount) % threadCount;
+
+		if (rangeSize < threadCount) {
+			// Not enough ids to go around, so threads share them
+			idSliceStart = slice % rangeSize;
+			idSliceSize = 1;
+			return;
+		}
+
+		long baseSize = rangeSize / threadCount;
+		long remainder = rangeSize % threadCount;
+
+		idSliceStart = slice * baseSize + Math.min(slice, remainder);
+		idSliceSize = baseSize;
+
+		if (slice < remainder) {
+			idSliceSize++;
+		}
 	}
 
 	public Sentence<T> newSentence() {
-		Sentence<T> sentence = Sentence.newSentence(getNewId());
+		Sentence<T> sentence = globalContext.sentenceFromId(getNewId());
 		return sentence;
 	}
 
@@ -38,6 +77,15 @@ public final class ThreadContext<T> {
 		sentence.populate(this, globalContext.getGrammar());
 	}
 
+	/**
+	Generates a new random Sentence into an existing Sentence object, reusing its memory.
+	**/
+
+	public void generateInto(final Sentence<T> sentence) {
+		sentence.reset(getNewId());
+		sentence.populate(this, globalContext.getGrammar());
+	}
+
 	public String generateString() {
 		Sentence<T> sentence = newSentence();
 		sentence.populate(this, globalContext.getGrammar());
@@ -69,7 +117,36 @@ public final class ThreadContext<T> {
 		return globalContext;
 	}
 
+	/**
+	Publishes the weight changes made by failed() and succeeded() in this thread that are still pending
+	**/
+
+	void mergeWeights() {
+		weightDeltas.merge();
+	}
+
+	WeightDeltas<T> getWeightDeltas() {
+		return weightDeltas;
+	}
+
+	IntStack getProgramStack() {
+		return programStack;
+	}
+
 	long getNewId() {
+		IdPermutation idPermutation = globalContext.getIdPermutation();
+
+		if (idPermutation != null) {
+			long newId = idPermutation.get(idSliceStart + idPosition);
+			idPosition++;
+
+			if (idPosition == idSliceSize) {
+				idPosition = 0;
+			}
+
+			return newId;
+		}
+
 		// Return an ID between idRangeStart and (idRangeStart + idRangeLength) inclusive
 		long newId = globalContext.getIdRangeStart() + (long) (random.nextDouble() * (globalContext.getIdRangeLength() + 1));
 
@@ -79,17 +156,43 @@ public final class ThreadContext<T> {
 		return newId;
 	}
 
-	Sentence<T> getCachedValue(final String ruleName) {
-		Sentence<T> cachedValue = ruleCache.get(ruleName);
+	@SuppressWarnings("unchecked")
+	private static <T> Sentence<T>[] newRuleCache(final Grammar<T> grammar) {
+		int slotCount = 0;
 
-		if (cachedValue == null) {
-			throw new IllegalArgumentException("Cached value for rule '" + ruleName + "' was requested, but not available.");
+		if (grammar != null) {
+			slotCount = grammar.getCacheSlotCount();
 		}
 
-		return cachedValue;
+		return (Sentence<T>[]) new Sentence<?>[slotCount];
 	}
 
-	void setCachedValue(final String ruleName, final Sentence<T> value) {
-		ruleCache.put(ruleName, value);
+	/**
+	Returns the cached value of the rule with the given cache slot, or null if the rule has not been generated yet
+	**/
+
+	Sentence<T> getCachedValue(final int cacheSlot) {
+		if (cacheSlot >= ruleCache.length) {
+			return null;
+		}
+
+		return ruleCache[cacheSlot];
+	}
+
+	/**
+	Forgets the values of all cached rules, so that the next Sentence does not depend on the previous ones
+	**/
+
+	void clearCachedValues() {
+		Arrays.fill(ruleCache, null);
+	}
+
+	void setCachedValue(final int cacheSlot, final Sentence<T> value) {
+		// The grammar may have gained cached rules since this context was created, e.g. via a visitor
+		if (cacheSlot >= ruleCache.length) {
+			ruleCache = Arrays.copyOf(ruleCache, cacheSlot + 1);
+		}
+
+		ruleCache[cacheSlot] = value;
 	}
 }
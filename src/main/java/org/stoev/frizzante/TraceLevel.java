@@ -0,0 +1,24 @@
+package org.stoev.frizzante;
+
+/**
+ * How much of the derivation of each Sentence is recorded during generation.
+ *
+ * @see GlobalContext.ContextBuilder#tracing(TraceLevel)
+**/
+
+public enum TraceLevel {
+	/**
+	Nothing is recorded. Sentence.failed(), Sentence.succeeded() and SentenceSimplifier can not be used.
+	**/
+	NONE,
+
+	/**
+	The productions used are recorded, which is sufficient for adaptive weights via failed() and succeeded()
+	**/
+	PRODUCTIONS,
+
+	/**
+	The productions used are recorded along with the span of the output each one produced, as needed by SentenceSimplifier
+	**/
+	FULL
+}
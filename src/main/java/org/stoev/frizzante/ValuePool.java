@@ -0,0 +1,88 @@
+package org.stoev.frizzante;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of values generated by one rule, shared by all threads that use the Grammar.
+ *
+ * <p>The pool is a ring buffer that keeps the last capacity values published into it. Publishing takes
+ * a single atomic increment and a single volatile write, and reading takes none beyond the volatile reads,
+ * so threads never lock each other out, however many of them there are.
+ *
+ * <p>A value becomes visible shortly after the increment that reserves its slot, so a reader may find
+ * a slot that is still empty or that holds the previous value of the slot. Callers must allow for null.
+**/
+
+final class ValuePool<T> {
+	static final int DEFAULT_CAPACITY = 10000;
+
+	private final String name;
+	private final AtomicReferenceArray<Sentence<T>> slots;
+	private final AtomicLong publishedCount = new AtomicLong();
+
+	ValuePool(final String n, final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity of pool " + n + " must be positive.");
+		}
+
+		name = n;
+		slots = new AtomicReferenceArray<Sentence<T>>(capacity);
+	}
+
+	/**
+	Adds a value, replacing the oldest one if the pool is full. The value must not be modified afterwards.
+	**/
+
+	void publish(final Sentence<T> value) {
+		long position = publishedCount.getAndIncrement();
+		slots.set((int) (position % slots.length()), value);
+	}
+
+	/**
+	Returns the total number of values published so far, including the ones that have since been replaced
+	**/
+
+	long getPublishedCount() {
+		return publishedCount.get();
+	}
+
+	/**
+	Returns the number of values currently in the pool
+	**/
+
+	int size() {
+		return (int) Math.min(publishedCount.get(), slots.length());
+	}
+
+	int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	Returns the value in the given slot. Slots are filled in order, so the first size() slots hold values.
+	**/
+
+	Sentence<T> get(final int slot) {
+		return slots.get(slot);
+	}
+
+	/**
+	Returns the value that was published age publications before the latest one, which has an age of 0,
+	or null if it is no longer in the pool
+	**/
+
+	Sentence<T> getRecent(final long age) {
+		long position = publishedCount.get() - 1 - age;
+
+		if (age < 0 || position < 0 || age >= slots.length()) {
+			return null;
+		}
+
+		return slots.get((int) (position % slots.length()));
+	}
+
+	String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,120 @@
+package org.stoev.frizzante;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The adaptive weight changes made by a single thread that have not been published yet.
+ *
+ * <p>failed() and succeeded() multiply the weights of the productions used by a Sentence. Rather than
+ * modifying the weights shared by all threads each time, the factors are accumulated here and merged into
+ * the rules once every mergeInterval feedback calls. Only the productions that were changed are merged, so a
+ * merge costs as much as the feedback it carries, no matter how many productions the rules have.
+ *
+ * <p>Not thread-safe. Each ThreadContext has its own instance.
+**/
+
+final class WeightDeltas<T> {
+	private final int mergeInterval;
+	private int pendingFeedback;
+
+	private final Map<GrammarRule<T>, RuleDeltas> deltas = new IdentityHashMap<GrammarRule<T>, RuleDeltas>();
+	private final Set<GrammarRule<T>> changedRules = Collections.newSetFromMap(new IdentityHashMap<GrammarRule<T>, Boolean>());
+
+	WeightDeltas(final int interval) {
+		assert interval >= 1;
+		mergeInterval = interval;
+	}
+
+	void demote(final GrammarProduction<T> production, final double penalty) {
+		if (penalty < 0.0f || penalty > 1.0f) {
+			throw new IllegalArgumentException("Demotion penalty must be between 0 and 1.0.");
+		}
+
+		multiply(production, 1 - penalty);
+	}
+
+	void promote(final GrammarProduction<T> production, final double promotion) {
+		if (promotion < 0.0f || promotion > 1.0d) {
+			throw new IllegalArgumentException("Promotion must be between 0 and 1.0.");
+		}
+
+		multiply(production, 1 / (1 - promotion));
+	}
+
+	private void multiply(final GrammarProduction<T> production, final double factor) {
+		GrammarRule<T> rule = production.getParent();
+		RuleDeltas ruleDeltas = deltas.get(rule);
+
+		if (ruleDeltas == null) {
+			ruleDeltas = new RuleDeltas(rule.getProductionCount());
+			deltas.put(rule, ruleDeltas);
+		}
+
+		changedRules.add(rule);
+		ruleDeltas.multiply(production.getIndex(), factor);
+	}
+
+	/**
+	Called once per failed() or succeeded(), merges the changes if enough of them have accumulated
+	**/
+
+	void feedbackCompleted() {
+		pendingFeedback++;
+
+		if (pendingFeedback >= mergeInterval) {
+			merge();
+		}
+	}
+
+	void merge() {
+		for (GrammarRule<T> rule: changedRules) {
+			deltas.get(rule).mergeInto(rule);
+		}
+
+		changedRules.clear();
+		pendingFeedback = 0;
+	}
+
+	/**
+	The accumulated factor for each production of a rule, 1.0 meaning no change, and which productions have one
+	**/
+
+	private static final class RuleDeltas {
+		private final double[] factors;
+		private final boolean[] changed;
+		private final int[] changedIndexes;
+		private int changedCount;
+
+		RuleDeltas(final int productionCount) {
+			factors = new double[productionCount];
+			changed = new boolean[productionCount];
+			changedIndexes = new int[productionCount];
+			Arrays.fill(factors, 1.0d);
+		}
+
+		void multiply(final int index, final double factor) {
+			// Tracked separately, as a factor can come back to exactly 1.0 after a demotion and a promotion
+			if (!changed[index]) {
+				changed[index] = true;
+				changedIndexes[changedCount++] = index;
+			}
+
+			factors[index] *= factor;
+		}
+
+		<R> void mergeInto(final GrammarRule<R> rule) {
+			rule.mergeWeights(changedIndexes, changedCount, factors);
+
+			for (int i = 0; i < changedCount; i++) {
+				factors[changedIndexes[i]] = 1.0d;
+				changed[changedIndexes[i]] = false;
+			}
+
+			changedCount = 0;
+		}
+	}
+}
@@ -3,6 +3,8 @@ package org.stoev.frizzante;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class AdaptiveTest {
@@ -74,4 +76,108 @@ public class AdaptiveTest {
 		s.failed(HALF_PENALTY);
 		Assert.assertEquals(grammar.getGrammarString(), "main:0.5 bad\n;\n");
 	}
+
+	@Test
+	public final void testMergeInterval() {
+		Grammar<String> grammar = new Grammar<String>(new Scanner("main: bad;"));
+		GlobalContext<String> g = new GlobalContext.ContextBuilder<String>().grammar(grammar).weightMergeInterval(3).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		for (int i = 0; i < 2; i++) {
+			Sentence<String> s = c.newSentence();
+			c.generate(s);
+			s.failed(HALF_PENALTY);
+		}
+
+		Assert.assertEquals(grammar.getGrammarString(), "main:1.0 bad\n;\n");
+
+		Sentence<String> s = c.newSentence();
+		c.generate(s);
+		s.failed(HALF_PENALTY);
+
+		Assert.assertEquals(grammar.getGrammarString(), "main:0.125 bad\n;\n");
+
+		s.failed(HALF_PENALTY);
+		c.mergeWeights();
+
+		Assert.assertEquals(grammar.getGrammarString(), "main:0.0625 bad\n;\n");
+	}
+
+	@Test
+	public final void testFeedbackReachesPicks() {
+		Grammar<String> grammar = new Grammar<String>(new Scanner("main: a | b | c | d | e | f | g | h | i | bad ;"));
+		GlobalContext<String> g = new GlobalContext.ContextBuilder<String>().grammar(grammar).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+		GrammarRule<String> main = (GrammarRule<String>) grammar.getRule("main");
+
+		Sentence<String> s = c.newSentence();
+		while (!s.toString().equals("bad")) {
+			c.generateInto(s);
+		}
+
+		s.failed(1.0f);
+
+		// The weight changes right away, while picks may use the previous weights for as many picks as there are productions
+		Assert.assertEquals(main.getWeight(9), 0.0);
+
+		for (int i = 0; i < main.getProductionCount(); i++) {
+			c.generateString();
+		}
+
+		for (int i = 0; i < HUNDRED_ITERATIONS; i++) {
+			Assert.assertNotEquals(c.generateString(), "bad");
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testInvalidMergeInterval() {
+		new GlobalContext.ContextBuilder<String>().grammar("main: foo ;").weightMergeInterval(0);
+	}
+
+	@Test
+	public final void testConcurrentFeedback() throws InterruptedException {
+		final int threadCount = 4;
+		final int feedbackCount = 1000;
+		final double penalty = 0.001;
+
+		final Grammar<String> grammar = new Grammar<String>(new Scanner("main: good | bad ;"));
+		final GlobalContext<String> g = new GlobalContext.ContextBuilder<String>().grammar(grammar).weightMergeInterval(7).build();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 1; t <= threadCount; t++) {
+			final ThreadContext<String> c = ThreadContext.newThreadContext(g, t);
+
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int failures = 0;
+
+					while (failures < feedbackCount) {
+						Sentence<String> sentence = c.newSentence();
+						c.generate(sentence);
+
+						if (sentence.toString().contains("bad")) {
+							sentence.failed(penalty);
+							failures++;
+						}
+					}
+
+					c.mergeWeights();
+				}
+			}));
+		}
+
+		for (Thread thread: threads) {
+			thread.start();
+		}
+
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		// No demotion may be lost, no matter how the merges of the threads interleave
+		GrammarRule<String> main = (GrammarRule<String>) grammar.getRule("main");
+		Assert.assertEquals(main.getWeight(0), 1.0);
+		Assert.assertEquals(main.getWeight(1), Math.pow(1 - penalty, threadCount * feedbackCount), 1e-9);
+	}
 }
@@ -0,0 +1,71 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AliasTableTest {
+	private static final double EPSILON = 1e-9;
+	private static final int PICKS = 1000;
+
+	private static void assertDistribution(final double[] weights) {
+		AliasTable table = new AliasTable(weights);
+
+		double weightSum = 0;
+		for (double weight: weights) {
+			weightSum += weight;
+		}
+
+		for (int i = 0; i < weights.length; i++) {
+			Assert.assertEquals(table.getProbability(i), weights[i] / weightSum, EPSILON);
+		}
+	}
+
+	@Test
+	public final void testSingle() {
+		AliasTable table = new AliasTable(new double[] {2});
+
+		for (int i = 0; i < PICKS; i++) {
+			Assert.assertEquals(table.pick((double) i / PICKS), 0);
+		}
+	}
+
+	@Test
+	public final void testEqualWeights() {
+		assertDistribution(new double[] {1, 1, 1});
+	}
+
+	@Test
+	public final void testUnequalWeights() {
+		assertDistribution(new double[] {80, 20});
+		assertDistribution(new double[] {1, 2, 3, 4, 5, 6, 7});
+		assertDistribution(new double[] {99, 1, 0.5, 0.25});
+	}
+
+	@Test
+	public final void testZeroWeight() {
+		double[] weights = new double[] {0, 1, 0};
+		AliasTable table = new AliasTable(weights);
+		assertDistribution(weights);
+
+		for (int i = 0; i < PICKS; i++) {
+			Assert.assertEquals(table.pick((double) i / PICKS), 1);
+		}
+	}
+
+	@Test
+	public final void testAllZeroWeights() {
+		AliasTable table = new AliasTable(new double[] {0, 0});
+		Assert.assertEquals(table.getProbability(0), 0.5, EPSILON);
+		Assert.assertEquals(table.getProbability(1), 0.5, EPSILON);
+	}
+
+	@Test
+	public final void testWideRule() {
+		double[] weights = new double[PICKS];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = i % 7 + 1;
+		}
+
+		assertDistribution(weights);
+	}
+}
@@ -1,7 +1,12 @@
 package org.stoev.frizzante;
 
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
 public class AppTest {
 	@Test
 	public final void testAppSimple() throws Throwable {
@@ -13,4 +18,23 @@ public class AppTest {
 			, "--range", "10000"
 		});
 	}
+
+	@Test
+	public final void testEmit() throws Throwable {
+		File file = File.createTempFile("frizzante", ".sql");
+		file.deleteOnExit();
+
+		org.stoev.frizzante.App.main(new String[] {
+			"--grammar", "mongodb.grammar"
+			, "--emit", file.getPath()
+			, "--ordered"
+			, "--threads", "2"
+			, "--count", "100"
+			, "--delimiter", "\\n--\\n"
+		});
+
+		String output = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		Assert.assertEquals(output.split("\n--\n").length, 100);
+		Assert.assertTrue(output.endsWith("\n--\n"));
+	}
 }
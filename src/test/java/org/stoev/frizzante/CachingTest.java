@@ -32,4 +32,35 @@ public class CachingTest {
 
 		Assert.assertEquals(longValue1.longValue(), longValue2.longValue());
 	}
+
+	@Test
+	public final void testCacheSlots() {
+		String grammar = "main: foo bar baz , foo_cached bar_cached ;\n foo: foo1 | foo2 ;\n bar: bar1 | bar2 ;\n baz: baz1 | baz2 ;";
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(grammar).build();
+		Grammar<String> g = globalContext.getGrammar();
+
+		GrammarRule<String> foo = (GrammarRule<String>) g.getRule("foo");
+		GrammarRule<String> bar = (GrammarRule<String>) g.getRule("bar");
+		GrammarRule<String> baz = (GrammarRule<String>) g.getRule("baz");
+
+		Assert.assertEquals(g.getCacheSlotCount(), 2);
+		Assert.assertTrue(foo.isCached());
+		Assert.assertTrue(bar.isCached());
+		Assert.assertNotEquals(foo.getCacheSlot(), bar.getCacheSlot());
+		Assert.assertFalse(baz.isCached());
+
+		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
+
+		for (int i = 0; i < 10; i++) {
+			String sentence = threadContext.generateString();
+			Assert.assertTrue(sentence.matches("(foo[12]) (bar[12]) baz[12] , \\1 \\2 *"), sentence);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testCachedValueNotAvailable() {
+		String grammar = "main: foo_cached foo ;\n foo: foo1 | foo2 ;";
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(grammar).build();
+		ThreadContext.newThreadContext(globalContext, 1).generateString();
+	}
 }
@@ -0,0 +1,149 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class ConstantFolderTest {
+	private static final int ITERATIONS = 100;
+
+	private static GrammarProduction<String> getProduction(final GlobalContext<String> globalContext, final String ruleName) {
+		GrammarRule<String> rule = (GrammarRule<String>) globalContext.getGrammar().getRule(ruleName);
+		return rule.getProductions().get(0);
+	}
+
+	@Test
+	public final void testLiteralFusion() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: SELECT COUNT(*) FROM t1 ;").build();
+		GrammarProduction<String> production = getProduction(globalContext, "main");
+
+		Assert.assertTrue(production.getSourceElements().size() > 1);
+		Assert.assertEquals(production.getElements().size(), 1);
+		Assert.assertEquals(globalContext.newThreadContext().generateString(), "SELECT COUNT(*) FROM t1");
+	}
+
+	@Test
+	public final void testConstantRule() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: a x b empty c;\nx: y z;\nempty: ;").build();
+		GrammarProduction<String> production = getProduction(globalContext, "main");
+
+		Assert.assertEquals(production.getElements().size(), 1);
+
+		Sentence<String> sentence = globalContext.newThreadContext().generateSentence();
+		Assert.assertEquals(sentence.toString(), "a y z b  c");
+		Assert.assertEquals(sentence.size(), 1);
+	}
+
+	@Test
+	public final void testNonConstantRule() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: a x b c;\nx: y | z;").build();
+		GrammarProduction<String> production = getProduction(globalContext, "main");
+
+		// "a" "x" " b c"
+		Assert.assertEquals(production.getElements().size(), 3);
+	}
+
+	@Test
+	public final void testCachedRule() {
+		TestUtil.assertGenerates("main: x , x_cached;\nx: foo;", "foo , foo");
+	}
+
+	@Test
+	public final void testCyclicRules() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: x | y;\nx: y;\ny: x;").build();
+		Assert.assertEquals(getProduction(globalContext, "x").getElements().size(), 1);
+	}
+
+	@Test
+	public final void testNoFolding() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("#option NO_FOLDING\nmain: a x b;\nx: y;").build();
+		GrammarProduction<String> production = getProduction(globalContext, "main");
+
+		Assert.assertEquals(production.getElements().size(), production.getSourceElements().size());
+	}
+
+	@Test
+	public final void testSameOutput() {
+		// The SQL grammar has no constant rules, so folding it does not change the random choices made
+		GlobalContext<String> foldedContext = new ContextBuilder<String>().grammar(GenerationBenchmark.SQL_GRAMMAR).build();
+		GlobalContext<String> unfoldedContext = new ContextBuilder<String>().grammar("#option NO_FOLDING\n" + GenerationBenchmark.SQL_GRAMMAR).build();
+
+		ThreadContext<String> foldedThreadContext = foldedContext.newThreadContext();
+		ThreadContext<String> unfoldedThreadContext = unfoldedContext.newThreadContext();
+
+		for (long id = 0; id < ITERATIONS; id++) {
+			Sentence<String> foldedSentence = foldedContext.sentenceFromId(id);
+			foldedThreadContext.generate(foldedSentence);
+
+			Sentence<String> unfoldedSentence = unfoldedContext.sentenceFromId(id);
+			unfoldedThreadContext.generate(unfoldedSentence);
+
+			Assert.assertEquals(foldedSentence.toString(), unfoldedSentence.toString());
+			Assert.assertTrue(foldedSentence.size() < unfoldedSentence.size());
+		}
+	}
+
+	@Test
+	public final void testInlining() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: SELECT select_list FROM t1;\nselect_list: column_list;\ncolumn_list: c1 | c2;").build();
+		GrammarProduction<String> production = getProduction(globalContext, "main");
+		GrammarRule<String> columnList = (GrammarRule<String>) globalContext.getGrammar().getRule("column_list");
+
+		// "SELECT " column_list " FROM t1"
+		Assert.assertEquals(production.getElements().size(), 3);
+		Assert.assertSame(production.getElements().get(1), columnList);
+
+		Sentence<String> sentence = globalContext.newThreadContext().generateSentence();
+		Assert.assertTrue(sentence.toString().matches("SELECT c[12] FROM t1"), sentence.toString());
+
+		// select_list no longer appears in the trace, but column_list still does
+		Assert.assertEquals(sentence.getProductionInstances().size(), 2);
+		Assert.assertSame(sentence.getProductionInstances().get(1).getProduction().getParent(), columnList);
+	}
+
+	@Test
+	public final void testNoInlining() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("#option NO_INLINING\nmain: SELECT select_list FROM t1;\nselect_list: column_list;\ncolumn_list: c1 | c2;").build();
+		GrammarProduction<String> production = getProduction(globalContext, "main");
+
+		Assert.assertSame(production.getElements().get(1), globalContext.getGrammar().getRule("select_list"));
+	}
+
+	@Test
+	public final void testRecursiveInlining() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: list;\nlist: item more;\nmore: | , list;\nitem: a | b;").build();
+		GrammarRule<String> list = (GrammarRule<String>) globalContext.getGrammar().getRule("list");
+		GrammarRule<String> more = (GrammarRule<String>) globalContext.getGrammar().getRule("more");
+
+		// list is inlined everywhere, as the recursion goes through more, which has two productions
+		Assert.assertFalse(getProduction(globalContext, "main").getElements().contains(list));
+		Assert.assertTrue(more.getProductions().get(1).getElements().contains(more));
+
+		String sentence = globalContext.newThreadContext().generateString();
+		Assert.assertTrue(sentence.matches("[ab]( *, [ab])* *"), sentence);
+	}
+
+	@Test
+	public final void testSelfRecursiveRuleNotInlined() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: x;\nx: a x;").build();
+		GrammarRule<String> x = (GrammarRule<String>) globalContext.getGrammar().getRule("x");
+
+		Assert.assertTrue(getProduction(globalContext, "main").getElements().contains(x));
+		Assert.assertTrue(getProduction(globalContext, "x").getElements().contains(x));
+	}
+
+	@Test
+	public final void testUnreachableRules() {
+		// Java code that is never reached is not compiled, so it does not matter that it is broken
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: foo;\nunused: bar broken;\nbroken.java: {{ not java }};\n").build();
+
+		Assert.assertEquals(globalContext.newThreadContext().generateString(), "foo");
+		Assert.assertEquals(globalContext.getGrammar().getProductionCount(), 1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testReachableBrokenJava() {
+		new ContextBuilder<String>().grammar("main: foo broken;\nbroken.java: {{ not java }};\n").build();
+	}
+}
@@ -0,0 +1,121 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class CorpusReplayTest {
+	private static final String GRAMMAR = "#option RANDOM_TERMINALS\nmain: foo foo , bar | тест bar ;\nfoo: foo1 | ü | foo3 ;\nbar: $int(1,1000) ;";
+	private static final int SENTENCES = 1000;
+
+	/**
+	Records the Sentences it is given instead of executing them
+	**/
+
+	private static final class RecordingRunnableFactory implements FuzzRunnableFactory {
+		private final Queue<String> executed = new ConcurrentLinkedQueue<String>();
+		private final String failOn;
+
+		RecordingRunnableFactory(final String f) {
+			failOn = f;
+		}
+
+		@Override
+		public FuzzRunnable newRunnable(final RunnableManager runnableManager, final ThreadContext<?> threadContext) {
+			return new FuzzRunnable(runnableManager, threadContext) {
+				@Override
+				public void execute(final Sentence<?> sentence) {
+					if (sentence.toString().equals(failOn)) {
+						throw new IllegalStateException("Failing as requested.");
+					}
+
+					executed.add(sentence.getId() + ": " + sentence.toString());
+				}
+			};
+		}
+	}
+
+	private static Corpus writeCorpus(final List<String> expected) throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).tracing(TraceLevel.NONE).build();
+		SentenceRange<String> range = globalContext.sentences(0, SENTENCES);
+
+		File file = File.createTempFile("frizzante", ".corpus");
+		file.deleteOnExit();
+		Corpus.getIndexFile(file).deleteOnExit();
+
+		CorpusWriter.write(range, file);
+
+		for (Sentence<String> sentence: range) {
+			expected.add(sentence.getId() + ": " + sentence.toString());
+		}
+
+		return Corpus.open(file);
+	}
+
+	private static List<String> replay(final Corpus corpus, final RecordingRunnableFactory recorder, final boolean loop, final long count) throws Exception {
+		new ContextBuilder<String>()
+			.runnableFactory(new CorpusRunnableFactory(corpus, recorder, loop))
+			.threads(3)
+			.count(count)
+			.duration(60)
+			.build()
+			.run();
+
+		List<String> executed = new ArrayList<String>(recorder.executed);
+		Collections.sort(executed);
+		return executed;
+	}
+
+	@Test
+	public final void testReplayOnce() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		Corpus corpus = writeCorpus(expected);
+		Collections.sort(expected);
+
+		// Without looping, the threads stop once they have replayed the corpus between them
+		Assert.assertEquals(replay(corpus, new RecordingRunnableFactory(null), false, Long.MAX_VALUE), expected);
+
+		// Runs are reproducible
+		Assert.assertEquals(replay(corpus, new RecordingRunnableFactory(null), false, Long.MAX_VALUE), expected);
+	}
+
+	@Test
+	public final void testLoop() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		Corpus corpus = writeCorpus(expected);
+
+		List<String> executed = replay(corpus, new RecordingRunnableFactory(null), true, SENTENCES);
+		Assert.assertEquals(executed.size(), 3 * SENTENCES);
+		Assert.assertTrue(expected.containsAll(executed));
+	}
+
+	@Test(expectedExceptions = ExecutionException.class)
+	public final void testExecutionException() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		Corpus corpus = writeCorpus(expected);
+		String failOn = expected.get(500).substring(expected.get(500).indexOf(": ") + 2);
+
+		replay(corpus, new RecordingRunnableFactory(failOn), false, Long.MAX_VALUE);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*JavaBatchRunnable.*execute\\(\\).*")
+	public final void testBatchDelegate() throws Exception {
+		Corpus corpus = writeCorpus(new ArrayList<String>());
+
+		new ContextBuilder<String>()
+			.runnableFactory(new CorpusRunnableFactory(corpus, new JavaBatchRunnableFactory(), false))
+			.threads(1)
+			.duration(60)
+			.build()
+			.run();
+	}
+}
@@ -0,0 +1,127 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class CorpusTest {
+	private static final String GRAMMAR = "#option RANDOM_TERMINALS\nmain: foo foo , bar | тест bar | ;\nfoo: foo1 | ü | foo3 ;\nbar: $int(1,1000) ;";
+	private static final long START_ID = 100;
+	// More than one chunk of the writer
+	private static final int SENTENCES = 5000;
+
+	private static File newCorpusFile() throws IOException {
+		File file = File.createTempFile("frizzante", ".corpus");
+		file.deleteOnExit();
+		Corpus.getIndexFile(file).deleteOnExit();
+		return file;
+	}
+
+	private static List<String> expected(final SentenceRange<String> range) {
+		List<String> result = new ArrayList<String>();
+
+		for (Sentence<String> sentence: range) {
+			result.add(sentence.toString());
+		}
+
+		return result;
+	}
+
+	private static void assertCorpus(final Corpus corpus, final List<String> expected) {
+		Assert.assertEquals(corpus.getStartId(), START_ID);
+		Assert.assertEquals(corpus.size(), expected.size());
+
+		Corpus.Cursor cursor = corpus.cursor();
+		int index = 0;
+
+		while (cursor.next()) {
+			Assert.assertEquals(cursor.getId(), START_ID + index);
+			Assert.assertEquals(cursor.getString(), expected.get(index));
+			index++;
+		}
+
+		Assert.assertEquals(index, expected.size());
+
+		Random random = new Random(1);
+		for (int i = 0; i < 1000; i++) {
+			int position = random.nextInt(expected.size());
+			cursor.seek(START_ID + position);
+			Assert.assertEquals(cursor.getString(), expected.get(position));
+		}
+
+		// next() continues from wherever seek() left off
+		cursor.seek(START_ID + 10);
+		Assert.assertTrue(cursor.next());
+		Assert.assertEquals(cursor.getString(), expected.get(11));
+	}
+
+	@Test
+	public final void testWriteAndRead() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).tracing(TraceLevel.NONE).build();
+		SentenceRange<String> range = globalContext.sentences(START_ID, SENTENCES);
+		File file = newCorpusFile();
+
+		CorpusWriter.write(range, file, new ForkJoinPool(4));
+		List<String> expected = expected(range);
+
+		Corpus corpus = Corpus.open(file);
+		Assert.assertEquals(corpus.getSegmentCount(), 1);
+		assertCorpus(corpus, expected);
+
+		Corpus segmentedCorpus = Corpus.open(file, 1000);
+		Assert.assertTrue(segmentedCorpus.getSegmentCount() > 10);
+		assertCorpus(segmentedCorpus, expected);
+	}
+
+	@Test
+	public final void testSameWithOneWorker() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).build();
+		File file1 = newCorpusFile();
+		File file2 = newCorpusFile();
+
+		CorpusWriter.write(globalContext.sentences(START_ID, SENTENCES), file1, new ForkJoinPool(1));
+		CorpusWriter.write(globalContext.sentences(START_ID, SENTENCES), file2, new ForkJoinPool(3));
+
+		Assert.assertEquals(Files.readAllBytes(file2.toPath()), Files.readAllBytes(file1.toPath()));
+		Assert.assertEquals(Files.readAllBytes(Corpus.getIndexFile(file2).toPath()), Files.readAllBytes(Corpus.getIndexFile(file1).toPath()));
+	}
+
+	@Test
+	public final void testEmpty() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).build();
+		File file = newCorpusFile();
+
+		CorpusWriter.write(globalContext.sentences(START_ID, 0), file);
+		Corpus corpus = Corpus.open(file);
+
+		Assert.assertEquals(corpus.size(), 0);
+		Assert.assertFalse(corpus.cursor().next());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testIdOutsideCorpus() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).build();
+		File file = newCorpusFile();
+
+		CorpusWriter.write(globalContext.sentences(START_ID, 10), file);
+		Corpus.open(file).cursor().seek(START_ID + 10);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testNotCorpus() throws IOException {
+		File file = newCorpusFile();
+		Files.write(file.toPath(), "not a corpus, just some text".getBytes("UTF-8"));
+		Files.write(Corpus.getIndexFile(file).toPath(), "not a corpus index, just some text".getBytes("UTF-8"));
+
+		Corpus.open(file);
+	}
+}
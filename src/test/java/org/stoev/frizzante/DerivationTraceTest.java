@@ -0,0 +1,61 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class DerivationTraceTest {
+	private static final int ENTRIES = 1000;
+
+	@Test
+	public final void testGrowAndClear() {
+		DerivationTrace trace = new DerivationTrace();
+
+		for (int i = 0; i < ENTRIES; i++) {
+			int handle = trace.add(i, i * 2);
+			Assert.assertEquals(handle, i);
+
+			if (i % 2 == 0) {
+				trace.setEnd(handle, i * 2 + 1);
+			}
+		}
+
+		Assert.assertEquals(trace.size(), ENTRIES);
+
+		for (int i = 0; i < ENTRIES; i++) {
+			Assert.assertEquals(trace.getProductionId(i), i);
+			Assert.assertEquals(trace.getStart(i), i * 2);
+			Assert.assertEquals(trace.wasProductive(i), i % 2 == 0);
+
+			if (i % 2 == 0) {
+				Assert.assertEquals(trace.getEnd(i), i * 2 + 1);
+			}
+		}
+
+		trace.clear();
+		Assert.assertEquals(trace.size(), 0);
+	}
+
+	@Test
+	public final void testEmptyProduction() {
+		DerivationTrace trace = new DerivationTrace();
+		int handle = trace.add(0, 5);
+
+		// A production that generated nothing ends just before it started
+		trace.setEnd(handle, 4);
+		Assert.assertFalse(trace.wasProductive(handle));
+	}
+
+	@Test
+	public final void testDenseProductionIds() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: foo | bar;\nfoo: a | b | c;\nbar: d;").build();
+		Grammar<String> grammar = globalContext.getGrammar();
+
+		Assert.assertEquals(grammar.getProductionCount(), 6);
+
+		for (int i = 0; i < grammar.getProductionCount(); i++) {
+			Assert.assertEquals(grammar.getProduction(i).getId(), i);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.stoev.frizzante;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+/**
+ * Compares the ways generated Java code and visitors can be called: reflection, which is how
+ * inline Java and visitors used to be dispatched, a bound MethodHandle, which JavaVisitor falls back to,
+ * a plain interface call, as used by InlineJava, and the adapter JavaVisitor generates. Run with:
+ * <pre>
+ * java -cp target/classes:target/test-classes org.stoev.frizzante.DispatchBenchmark
+ * </pre>
+**/
+
+public final class DispatchBenchmark {
+	private static final int WARMUP_ITERATIONS = 1000000;
+	private static final int ITERATIONS = 10000000;
+	private static final int RESET_INTERVAL = 1000;
+
+	private DispatchBenchmark() {
+		assert false;
+	}
+
+	public static final class Appender implements InlineJavaCode<String> {
+		@Override
+		public void generate(final ThreadContext<String> threadContext, final Sentence<String> sentence) {
+			sentence.add("a");
+		}
+
+		public void visit(final ThreadContext<String> threadContext, final Sentence<String> sentence, final Sentence<String> argument) {
+			sentence.add("a");
+		}
+	}
+
+	private abstract static class Dispatch {
+		abstract void call(ThreadContext<String> threadContext, Sentence<String> sentence) throws Throwable;
+	}
+
+	static long nanosPerCall(final Dispatch dispatch, final int iterations) throws Throwable {
+		ThreadContext<String> threadContext = new GlobalContext.ContextBuilder<String>().grammar("main: a ;").build().newThreadContext();
+		Sentence<String> sentence = threadContext.newSentence();
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++) {
+			if (i % RESET_INTERVAL == 0) {
+				sentence.reset(i);
+			}
+
+			dispatch.call(threadContext, sentence);
+		}
+
+		return (System.nanoTime() - start) * 1000 / iterations;
+	}
+
+	public static void main(final String[] args) throws Throwable {
+		final Appender appender = new Appender();
+		final InlineJavaCode<String> javaCode = appender;
+		final Method generateMethod = Appender.class.getDeclaredMethod("generate", ThreadContext.class, Sentence.class);
+		final Method visitMethod = Appender.class.getDeclaredMethod("visit", ThreadContext.class, Sentence.class, Sentence.class);
+		final MethodHandle visitHandle = MethodHandles.lookup().unreflect(visitMethod).bindTo(appender).asType(MethodType.methodType(void.class, ThreadContext.class, Sentence.class, Sentence.class));
+
+		final JavaVisitor<String> javaVisitor = new JavaVisitor<String>(appender, "visit", null);
+		JavaVisitor.compileAll(Collections.singletonList(javaVisitor));
+		assert javaVisitor.isCalledThroughAdapter();
+
+		String[] names = {"Method.invoke(generate)", "Method.invoke(visit)", "MethodHandle.invokeExact(visit)", "InlineJavaCode.generate", "JavaVisitor.generate"};
+		Dispatch[] dispatches = {
+			new Dispatch() {
+				void call(final ThreadContext<String> threadContext, final Sentence<String> sentence) throws Throwable {
+					generateMethod.invoke(appender, threadContext, sentence);
+				}
+			},
+			new Dispatch() {
+				void call(final ThreadContext<String> threadContext, final Sentence<String> sentence) throws Throwable {
+					visitMethod.invoke(appender, threadContext, sentence, null);
+				}
+			},
+			new Dispatch() {
+				void call(final ThreadContext<String> threadContext, final Sentence<String> sentence) throws Throwable {
+					visitHandle.invokeExact(threadContext, sentence, (Sentence<String>) null);
+				}
+			},
+			new Dispatch() {
+				void call(final ThreadContext<String> threadContext, final Sentence<String> sentence) throws Throwable {
+					javaCode.generate(threadContext, sentence);
+				}
+			},
+			new Dispatch() {
+				void call(final ThreadContext<String> threadContext, final Sentence<String> sentence) throws Throwable {
+					javaVisitor.generate(threadContext, sentence);
+				}
+			}
+		};
+
+		for (Dispatch dispatch: dispatches) {
+			nanosPerCall(dispatch, WARMUP_ITERATIONS);
+		}
+
+		System.out.println("dispatch\tps per call");
+
+		for (int i = 0; i < dispatches.length; i++) {
+			System.out.println(names[i] + "\t" + nanosPerCall(dispatches[i], ITERATIONS));
+		}
+	}
+}
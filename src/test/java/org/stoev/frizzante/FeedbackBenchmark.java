@@ -0,0 +1,119 @@
+package org.stoev.frizzante;
+
+/**
+ * Measures the cost of adaptive feedback as the number of productions in a rule grows.
+ *
+ * <p>Given a number of threads and a weight merge interval, measures instead how the combined
+ * throughput of generation plus feedback scales with the number of threads. Run with:
+ * <pre>
+ * java -cp target/classes:target/test-classes org.stoev.frizzante.FeedbackBenchmark [threads interval]
+ * </pre>
+**/
+
+public final class FeedbackBenchmark {
+	private static final int[] WIDTHS = {10, 100, 1000, 3000};
+	private static final int WARMUP_ITERATIONS = 20000;
+	private static final int ITERATIONS = 200000;
+	private static final double PENALTY = 0.01;
+	private static final int CONCURRENT_WIDTH = 100;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private FeedbackBenchmark() {
+		assert false;
+	}
+
+	static String wideGrammar(final int width) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("main: wide wide wide wide ;\nwide: w0");
+
+		for (int i = 1; i < width; i++) {
+			sb.append(" | w");
+			sb.append(i);
+		}
+
+		sb.append(" ;\n");
+		return sb.toString();
+	}
+
+	static long feedbackNanos(final int width, final int iterations) {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(wideGrammar(width)).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+
+		long elapsed = 0;
+
+		for (int i = 0; i < iterations; i++) {
+			Sentence<String> sentence = threadContext.generateSentence();
+
+			long start = System.nanoTime();
+			if (i % 2 == 0) {
+				sentence.failed(PENALTY);
+			} else {
+				sentence.succeeded(PENALTY);
+			}
+			elapsed += System.nanoTime() - start;
+		}
+
+		return elapsed / iterations;
+	}
+
+	static long concurrentSentencesPerSecond(final int threadCount, final int interval, final int iterations) throws InterruptedException {
+		final GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(wideGrammar(CONCURRENT_WIDTH)).weightMergeInterval(interval).build();
+		Thread[] threads = new Thread[threadCount];
+
+		for (int t = 0; t < threadCount; t++) {
+			final ThreadContext<String> threadContext = globalContext.newThreadContext(t + 1);
+
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Sentence<String> sentence = threadContext.newSentence();
+
+					for (int i = 0; i < iterations; i++) {
+						threadContext.generateInto(sentence);
+
+						if (i % 2 == 0) {
+							sentence.failed(PENALTY);
+						} else {
+							sentence.succeeded(PENALTY);
+						}
+					}
+
+					threadContext.mergeWeights();
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+
+		for (Thread thread: threads) {
+			thread.start();
+		}
+
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		return threadCount * iterations * NANOS_PER_SECOND / (System.nanoTime() - start);
+	}
+
+	public static void main(final String[] args) throws InterruptedException {
+		if (args.length == 2) {
+			int threadCount = Integer.parseInt(args[0]);
+			int interval = Integer.parseInt(args[1]);
+
+			concurrentSentencesPerSecond(threadCount, interval, WARMUP_ITERATIONS);
+			System.out.println(threadCount + " threads, merge interval " + interval + "\t" + concurrentSentencesPerSecond(threadCount, interval, ITERATIONS) + " sentences/sec");
+			return;
+		}
+
+		for (int width: WIDTHS) {
+			feedbackNanos(width, WARMUP_ITERATIONS);
+		}
+
+		System.out.println("width\tns per feedback call");
+
+		for (int width: WIDTHS) {
+			System.out.println(width + "\t" + feedbackNanos(width, ITERATIONS));
+		}
+	}
+}
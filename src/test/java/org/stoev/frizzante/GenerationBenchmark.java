@@ -0,0 +1,137 @@
+package org.stoev.frizzante;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the throughput and the allocation rate of the different ways of generating Sentences.
+ * Run with:
+ * <pre>
+ * java -cp target/classes:target/test-classes org.stoev.frizzante.GenerationBenchmark [variant]
+ * </pre>
+**/
+
+public final class GenerationBenchmark {
+	private static final int WARMUP_ITERATIONS = 200000;
+	private static final int ITERATIONS = 1000000;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	static final String SQL_GRAMMAR =
+		  "main: select | select | insert ;\n"
+		+ "select: SELECT select_list FROM table where_clause ;\n"
+		+ "select_list: column | column , select_list | COUNT(*) ;\n"
+		+ "insert: INSERT INTO table ( column ) VALUES ( value ) ;\n"
+		+ "where_clause: | WHERE condition ;\n"
+		+ "condition: column = value | condition AND condition | column IS NULL ;\n"
+		+ "table: t1 | t2 | t3 | t4 ;\n"
+		+ "column: c1 | c2 | c3 | c4 | c5 | c6 | c7 | c8 ;\n"
+		+ "value: 1 | 2 | 3 | 'foo' | NULL ;\n";
+
+	private GenerationBenchmark() {
+		assert false;
+	}
+
+	interface Generator {
+		Sentence<String> generate(long id);
+	}
+
+	static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	static void run(final String name, final Generator generator, final int iterations, final boolean report) {
+		long startBytes = allocatedBytes();
+		long start = System.nanoTime();
+		long elements = 0;
+
+		for (int i = 0; i < iterations; i++) {
+			elements += generator.generate(i).size();
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long bytes = allocatedBytes() - startBytes;
+
+		// Make sure the result is used so that the generation can not be optimized away
+		if (elements == 0) {
+			throw new IllegalStateException();
+		}
+
+		if (report) {
+			System.out.println(name + "\t" + (iterations * NANOS_PER_SECOND / elapsed) + " sentences/sec\t" + (bytes / iterations) + " bytes/sentence");
+		}
+	}
+
+	static Generator newSentences(final GlobalContext<String> globalContext, final Generatable<String> startingGeneratable) {
+		final ThreadContext<String> threadContext = globalContext.newThreadContext();
+
+		return new Generator() {
+			@Override
+			public Sentence<String> generate(final long id) {
+				Sentence<String> sentence = globalContext.sentenceFromId(id);
+				sentence.populate(threadContext, startingGeneratable);
+				return sentence;
+			}
+		};
+	}
+
+	static Generator reusedSentence(final GlobalContext<String> globalContext) {
+		final ThreadContext<String> threadContext = globalContext.newThreadContext();
+		final Sentence<String> sentence = threadContext.newSentence();
+
+		return new Generator() {
+			@Override
+			public Sentence<String> generate(final long id) {
+				sentence.reset(id);
+				threadContext.generate(sentence);
+				return sentence;
+			}
+		};
+	}
+
+	public static void main(final String[] args) {
+		final GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(SQL_GRAMMAR).build();
+		final GlobalContext<String> unfoldedContext = new GlobalContext.ContextBuilder<String>().grammar("#option NO_FOLDING\n" + SQL_GRAMMAR).build();
+		final GlobalContext<String> jitContext = new GlobalContext.ContextBuilder<String>().grammar(SQL_GRAMMAR).jit(true).build();
+		final GlobalContext<String> untracedContext = new GlobalContext.ContextBuilder<String>().grammar(SQL_GRAMMAR).jit(true).tracing(TraceLevel.NONE).build();
+		final Grammar<String> grammar = globalContext.getGrammar();
+
+		String[] names = {
+			"Generatable stack",
+			"GrammarProgram",
+			"GrammarProgram, reused Sentence",
+			"GrammarProgram, reused Sentence, no folding",
+			"JIT",
+			"JIT, reused Sentence",
+			"JIT, reused Sentence, no tracing"
+		};
+
+		Generator[] generators = {
+			newSentences(globalContext, grammar.getRule("main")),
+			newSentences(globalContext, grammar),
+			reusedSentence(globalContext),
+			reusedSentence(unfoldedContext),
+			newSentences(jitContext, jitContext.getGrammar()),
+			reusedSentence(jitContext),
+			reusedSentence(untracedContext)
+		};
+
+		// Running all variants in the same JVM pollutes the type profiles of the shared code paths,
+		// so a single variant can be selected by passing its number as an argument
+
+		int first = 0;
+		int last = generators.length - 1;
+
+		if (args.length > 0) {
+			first = Integer.parseInt(args[0]);
+			last = first;
+		}
+
+		for (int i = first; i <= last; i++) {
+			run(names[i], generators[i], WARMUP_ITERATIONS, false);
+		}
+
+		for (int i = first; i <= last; i++) {
+			run(names[i], generators[i], ITERATIONS, true);
+		}
+	}
+}
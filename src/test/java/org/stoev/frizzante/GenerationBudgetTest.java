@@ -0,0 +1,105 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class GenerationBudgetTest {
+	private static final int ITERATIONS = 100;
+
+	private static Sentence<String> generate(final GlobalContext<String> globalContext, final long id, final boolean useStack) {
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+		Sentence<String> sentence = globalContext.sentenceFromId(id);
+
+		if (useStack) {
+			sentence.populate(threadContext, globalContext.getGrammar().getRule("main"));
+		} else {
+			threadContext.generate(sentence);
+		}
+
+		return sentence;
+	}
+
+	private static int count(final String string, final char c) {
+		int count = 0;
+
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) == c) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	@Test
+	public final void testMaxDepth() {
+		for (boolean jit: new boolean[] {false, true}) {
+			GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: expr ;\nexpr:99 ( expr ) | x ;").maxDepth(10).jit(jit).build();
+
+			for (boolean useStack: new boolean[] {false, true}) {
+				for (long id = 0; id < ITERATIONS; id++) {
+					String sentence = generate(globalContext, id, useStack).toString();
+
+					Assert.assertTrue(count(sentence, '(') <= 10, sentence);
+					Assert.assertTrue(sentence.contains("x"), sentence);
+				}
+			}
+
+			Assert.assertTrue(globalContext.getBudgetHits().get("expr") > 0);
+			Assert.assertEquals(globalContext.getBudgetHits().keySet().size(), 1);
+		}
+	}
+
+	@Test
+	public final void testMaxElements() {
+		for (boolean jit: new boolean[] {false, true}) {
+			// Each expr expands into more than one expr on average, so without a limit some Sentences never end.
+			// Once the limit is reached, each open production still needs to complete, so the depth is limited as well.
+			GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: expr ;\nexpr:3 expr + expr | x ;").maxElements(1000).maxDepth(100).jit(jit).build();
+
+			for (boolean useStack: new boolean[] {false, true}) {
+				for (long id = 0; id < ITERATIONS; id++) {
+					Sentence<String> sentence = generate(globalContext, id, useStack);
+					Assert.assertTrue(sentence.size() <= 1000 + 2 * 100, "Sentence has " + sentence.size() + " elements");
+				}
+			}
+
+			Assert.assertTrue(globalContext.getBudgetHits().get("expr") > 0);
+		}
+	}
+
+	@Test
+	public final void testMaxBytes() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: list ;\nlist:9 abc list | abc ;").maxBytes(100).build();
+
+		for (boolean useStack: new boolean[] {false, true}) {
+			for (long id = 0; id < ITERATIONS; id++) {
+				Sentence<String> sentence = generate(globalContext, id, useStack);
+				// The limit is checked when list is expanded, after the production has already added its literal
+				Assert.assertTrue(sentence.getEncodedLength() <= 100 + 2 * " abc".length(), sentence.toString());
+			}
+		}
+
+		Assert.assertTrue(globalContext.getBudgetHits().get("list") > 0);
+	}
+
+	@Test
+	public final void testSameOutputWithinBudget() {
+		String grammar = "main: foo bar | bar;\nfoo: foo1 | foo2 | foo3;\nbar: bar1 | bar2 | ;";
+		GlobalContext<String> unlimitedContext = new ContextBuilder<String>().grammar(grammar).build();
+		GlobalContext<String> limitedContext = new ContextBuilder<String>().grammar(grammar).maxDepth(2).maxElements(2).maxBytes(20).build();
+
+		for (long id = 0; id < ITERATIONS; id++) {
+			Assert.assertEquals(generate(limitedContext, id, false).toString(), generate(unlimitedContext, id, false).toString());
+		}
+
+		Assert.assertTrue(limitedContext.getBudgetHits().isEmpty());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testNegativeLimit() {
+		new ContextBuilder<String>().grammar("main: foo ;").maxDepth(-1).build();
+	}
+}
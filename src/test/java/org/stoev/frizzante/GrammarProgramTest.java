@@ -0,0 +1,77 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+public class GrammarProgramTest {
+	private static final int SENTENCES = 500;
+
+	static final String[] GRAMMARS = {
+		"main: ;",
+		"main: foo | bar | baz ;",
+		"main: foo bar ;\nfoo: foo1 | foo2 | ;\nbar: bar1 bar1 | bar2 ;",
+		"main:80% foo , main |20% foo;",
+		"main:50% main main |50% Y;",
+		"main: SELECT COUNT(*) from_clause;\nfrom_clause: FROM DUAL |90% table;\ntable: T1 | T2;",
+		"main: foo , foo_cached , foo_cached ;\n foo: foo1 | foo2 | foo3 ;",
+		"main: x x_cached ;\nx: y y ;\ny: 1 | 2 | 3 ;"
+	};
+
+	private static void assertEquivalent(final String grammarString) {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(grammarString).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+		Grammar<String> grammar = globalContext.getGrammar();
+
+		for (long id = 0; id < SENTENCES; id++) {
+			Sentence<String> programSentence = globalContext.sentenceFromId(id);
+			programSentence.populate(threadContext, grammar);
+
+			Sentence<String> stackSentence = globalContext.sentenceFromId(id);
+			stackSentence.populate(threadContext, grammar.getRule("main"));
+
+			Assert.assertEquals(programSentence.toString(), stackSentence.toString(), "Sentence " + id + " of grammar:\n" + grammarString);
+
+			List<ProductionInstance<String>> programInstances = programSentence.getProductionInstances();
+			List<ProductionInstance<String>> stackInstances = stackSentence.getProductionInstances();
+
+			Assert.assertEquals(programInstances.size(), stackInstances.size());
+
+			for (int i = 0; i < programInstances.size(); i++) {
+				Assert.assertEquals(programInstances.get(i).toString(), stackInstances.get(i).toString());
+				Assert.assertSame(programInstances.get(i).getProduction(), stackInstances.get(i).getProduction());
+			}
+		}
+	}
+
+	@Test
+	public final void testEquivalence() {
+		for (String grammar: GRAMMARS) {
+			assertEquivalent(grammar);
+		}
+	}
+
+	@Test
+	public final void testProgramSize() {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: foo bar ;\nbar: baz | ;\nunused: qux ;").build();
+		GrammarProgram<String> program = globalContext.getGrammar().getProgram();
+
+		// Only rules reachable from main are compiled
+		Assert.assertEquals(program.getRuleCount(), 2);
+		Assert.assertEquals(program.getProductionCount(), 3);
+	}
+
+	@Test
+	public final void testStackIsReleasedOnException() {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: foo bar ;\nbar: bar_cached ;").build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+
+		try {
+			threadContext.generateString();
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(threadContext.getProgramStack().size(), 0);
+		}
+	}
+}
@@ -172,7 +172,19 @@ public class GrammarTest {
 		GlobalContext<String> g = new ContextBuilder<String>().grammar(grammar).build();
 		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
 
-		Assert.assertEquals(c.generateString(), "foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo");
+		Assert.assertEquals(c.generateString(), "foo , foo , foo , foo , foo , foo , foo , foo");
+		Assert.assertEquals(c.generateString(), "foo , foo , foo , foo , foo , foo , foo , foo");
+		Assert.assertEquals(c.generateString(), "foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo , foo");
+	}
+
+	@Test
+	public final void testRecursiveWeightLegacyRandom() {
+		String grammar = "main:80% foo , main |20% foo;";
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(grammar).sentenceRandom(SentenceRandom.newLegacy()).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		Assert.assertEquals(c.generateString(), "foo");
+		Assert.assertEquals(c.generateString(), "foo , foo , foo");
 	}
 
 	@Test
@@ -270,6 +282,29 @@ public class GrammarTest {
 		Assert.assertEquals(c.generateString(), "");
 	}
 
+	@Test
+	public final void testManyJavaRules() {
+		final int ruleCount = 30;
+		StringBuilder grammar = new StringBuilder("main:");
+		StringBuilder expected = new StringBuilder();
+
+		for (int i = 0; i < ruleCount; i++) {
+			grammar.append(" java" + i);
+			expected.append("java" + i);
+		}
+
+		grammar.append(" ;\n");
+
+		for (int i = 0; i < ruleCount; i++) {
+			grammar.append("java" + i + ".java: {{ sentence.append(\"java" + i + "\"); }};\n");
+		}
+
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(grammar.toString()).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		Assert.assertEquals(c.generateString().replace(" ", ""), expected.toString());
+	}
+
 	@Test (expectedExceptions = IllegalArgumentException.class)
 	public final void testJavaException() {
 		GlobalContext<String> g = new ContextBuilder<String>().grammar("main: foo ;\n foo.java: {{ int a = 0 ; int b = 2 / a; }};").build();
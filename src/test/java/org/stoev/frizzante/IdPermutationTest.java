@@ -0,0 +1,111 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class IdPermutationTest {
+	private static final String GRAMMAR = "main: foo ;\nfoo: foo1 | foo2 ;";
+
+	@Test
+	public final void testBijection() {
+		for (long size = 1; size <= 300; size++) {
+			IdPermutation permutation = new IdPermutation(1000, size, size * 31);
+			Set<Long> ids = new HashSet<Long>();
+
+			for (long position = 0; position < size; position++) {
+				long id = permutation.get(position);
+				Assert.assertTrue(id >= 1000 && id < 1000 + size, "Id " + id + " is outside of the range");
+				ids.add(id);
+			}
+
+			Assert.assertEquals(ids.size(), size);
+		}
+	}
+
+	@Test
+	public final void testShuffled() {
+		IdPermutation permutation = new IdPermutation(0, 1000000, 1);
+		int inPlace = 0;
+
+		for (long position = 0; position < 1000; position++) {
+			if (permutation.get(position) == position) {
+				inPlace++;
+			}
+		}
+
+		Assert.assertTrue(inPlace < 5);
+		Assert.assertNotEquals(new IdPermutation(0, 1000000, 2).get(0), permutation.get(0));
+	}
+
+	@Test
+	public final void testWideRange() {
+		// Past 2^53, a double can no longer tell neighbouring ids apart
+		for (long size: new long[] {(1L << 53) + 1, Long.MAX_VALUE}) {
+			IdPermutation permutation = new IdPermutation(0, size, 42);
+			Set<Long> ids = new HashSet<Long>();
+			int odd = 0;
+
+			for (long position = 0; position < 10000; position++) {
+				long id = permutation.get(position);
+				Assert.assertTrue(id >= 0 && id < size);
+				ids.add(id);
+
+				if (id % 2 == 1) {
+					odd++;
+				}
+			}
+
+			Assert.assertEquals(ids.size(), 10000);
+			Assert.assertTrue(odd > 4000 && odd < 6000, "Odd ids: " + odd);
+		}
+	}
+
+	@Test
+	public final void testThreadsCoverRange() {
+		// 1000 ids in 3 slices, the first one gets the id left over
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).idRange(0, 999).idMode(IdMode.PERMUTED).threads(3).build();
+		Set<Long> ids = new HashSet<Long>();
+
+		for (int contextId = 1; contextId <= 3; contextId++) {
+			ThreadContext<String> threadContext = globalContext.newThreadContext(contextId);
+			int sliceSize = 333;
+
+			if (contextId == 1) {
+				sliceSize = 334;
+			}
+
+			for (int i = 0; i < sliceSize; i++) {
+				Assert.assertTrue(ids.add(threadContext.newSentence().getId()));
+			}
+
+			// Then the thread starts over
+			Assert.assertFalse(ids.add(threadContext.newSentence().getId()));
+		}
+
+		Assert.assertEquals(ids.size(), 1000);
+	}
+
+	@Test
+	public final void testReproducible() {
+		for (int run = 0; run < 2; run++) {
+			GlobalContext<String> first = new ContextBuilder<String>().grammar(GRAMMAR).random(7).idMode(IdMode.PERMUTED).build();
+			GlobalContext<String> second = new ContextBuilder<String>().grammar(GRAMMAR).random(7).idMode(IdMode.PERMUTED).build();
+
+			Assert.assertEquals(second.newThreadContext().newSentence().getId(), first.newThreadContext().newSentence().getId());
+		}
+	}
+
+	@Test
+	public final void testSmallRange() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).idRange(5, 0).idMode(IdMode.PERMUTED).threads(4).build();
+
+		for (int contextId = 1; contextId <= 4; contextId++) {
+			Assert.assertEquals(globalContext.newThreadContext(contextId).newSentence().getId(), 5);
+		}
+	}
+}
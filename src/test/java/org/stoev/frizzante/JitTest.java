@@ -0,0 +1,94 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class JitTest {
+	private static final int SENTENCES = 500;
+
+	private static void assertSameAsInterpreter(final String grammarString) {
+		GlobalContext<String> interpreted = new GlobalContext.ContextBuilder<String>().grammar(grammarString).build();
+		GlobalContext<String> compiled = new GlobalContext.ContextBuilder<String>().grammar(grammarString).jit(true).build();
+
+		ThreadContext<String> interpretedContext = interpreted.newThreadContext();
+		ThreadContext<String> compiledContext = compiled.newThreadContext();
+
+		for (long id = 0; id < SENTENCES; id++) {
+			Sentence<String> interpretedSentence = interpreted.sentenceFromId(id);
+			interpretedContext.generate(interpretedSentence);
+
+			Sentence<String> compiledSentence = compiled.sentenceFromId(id);
+			compiledContext.generate(compiledSentence);
+
+			Assert.assertEquals(compiledSentence.toString(), interpretedSentence.toString(), "Sentence " + id + " of grammar:\n" + grammarString);
+			Assert.assertEquals(compiledSentence.getProductionInstances().toString(), interpretedSentence.getProductionInstances().toString());
+		}
+	}
+
+	@Test
+	public final void testSameAsInterpreter() {
+		for (String grammar: GrammarProgramTest.GRAMMARS) {
+			assertSameAsInterpreter(grammar);
+		}
+	}
+
+	@Test
+	public final void testEscaping() {
+		assertSameAsInterpreter("main: \"quoted\" \\ back\\slash \t tab тест ;");
+		assertSameAsInterpreter("#option STANDALONE_SEMICOLONS\nmain: line1\nline2\r\nline3\n;");
+	}
+
+	@Test
+	public final void testInlineJavaFallback() {
+		assertSameAsInterpreter("main: foo bar ;\nfoo: a | b ;\nbar.java: {{ sentence.append(String.valueOf(sentence.getRandom().nextInt(100))); }};");
+	}
+
+	@Test
+	public final void testWideRule() {
+		// Within the old limit of 1000 instructions, but over 8000 bytes of bytecode once translated
+		Assert.assertEquals(countTranslatedRules(wideGrammar(300)), 2);
+		Assert.assertEquals(countTranslatedRules(wideGrammar(900)), 1);
+
+		assertSameAsInterpreter(wideGrammar(900));
+	}
+
+	private static String wideGrammar(final int width) {
+		StringBuilder grammar = new StringBuilder("#option SKIP_WHITESPACE\nmain:");
+
+		for (int i = 0; i < width; i++) {
+			grammar.append(" x");
+		}
+
+		return grammar.append(" ;\nx: p | q ;").toString();
+	}
+
+	private static int countTranslatedRules(final String grammarString) {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar(grammarString).build();
+		String source = new GrammarJitCompiler<String>(globalContext.getGrammar().getProgram()).translate();
+
+		return source.split("switch \\(pick\\(", -1).length - 1;
+	}
+
+	@Test
+	public final void testDeepRecursion() {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main:999999 X main |1 Y;").jit(true).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+
+		Assert.assertTrue(threadContext.generateString().length() > GrammarJitCompiler.MAX_DEPTH * 2);
+	}
+
+	@Test
+	public final void testVisitorFallback() {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: foo foo ;\nfoo: a | b ;").visitor(new UppercaseVisitor()).jit(true).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+
+		String generated = threadContext.generateString();
+		Assert.assertTrue(generated.equals(generated.toUpperCase()), generated);
+	}
+
+	static final class UppercaseVisitor {
+		void foo(final ThreadContext<String> threadContext, final Sentence<String> sentence, final Sentence<String> argument) {
+			sentence.append(argument.toString().toUpperCase());
+		}
+	}
+}
@@ -9,7 +9,7 @@ import java.util.Iterator;
 public class ProductionInstanceTest {
 	@Test
 	public final void testEmptyGrammar() {
-		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main:;").build();
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("#option NO_FOLDING\n#option NO_INLINING\nmain:;").build();
 		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
 		Sentence<String> sentence = threadContext.newSentence();
 		threadContext.generate(sentence);
@@ -21,7 +21,7 @@ public class ProductionInstanceTest {
 
 	@Test
 	public final void testEmptyProduction() {
-		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main:foo bar;\nbar:;").build();
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("#option NO_FOLDING\n#option NO_INLINING\nmain:foo bar;\nbar:;").build();
 		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
 
 		Sentence<String> sentence = threadContext.newSentence();
@@ -36,7 +36,7 @@ public class ProductionInstanceTest {
 
 	@Test
 	public final void testOneProduction() {
-		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: foo bar;").build();
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("#option NO_FOLDING\n#option NO_INLINING\nmain: foo bar;").build();
 		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
 
 		Sentence<String> sentence = threadContext.newSentence();
@@ -56,7 +56,7 @@ public class ProductionInstanceTest {
 
 	@Test
 	public final void testTwoProductions() {
-		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: foo bar;\nfoo: foo2a foo2b;\nbar: bar2a bar2b;\n").build();
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("#option NO_FOLDING\n#option NO_INLINING\nmain: foo bar;\nfoo: foo2a foo2b;\nbar: bar2a bar2b;\n").build();
 		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
 
 		Sentence<String> sentence = threadContext.newSentence();
@@ -0,0 +1,256 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class RandomTerminalTest {
+	private static final int ITERATIONS = 2000;
+	private static final String OPTION = "#option RANDOM_TERMINALS\n";
+
+	private static List<String> generateAll(final String grammar, final boolean jit) {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(OPTION + grammar).jit(jit).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+		List<String> sentences = new ArrayList<String>();
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			sentences.add(c.generateString());
+		}
+
+		return sentences;
+	}
+
+	private static List<String> generateAll(final String grammar) {
+		return generateAll(grammar, false);
+	}
+
+	private static int count(final List<String> sentences, final String value) {
+		int count = 0;
+
+		for (String sentence: sentences) {
+			if (sentence.equals(value)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	@Test
+	public final void testInt() {
+		for (boolean jit: new boolean[] {false, true}) {
+			Set<String> values = new HashSet<String>(generateAll("main: x = $int(-2,2) ;", jit));
+
+			Assert.assertEquals(values.size(), 5, values.toString());
+
+			for (long i = -2; i <= 2; i++) {
+				Assert.assertTrue(values.contains("x = " + i), values.toString());
+			}
+		}
+	}
+
+	@Test
+	public final void testDefaults() {
+		for (String value: generateAll("main: $int $decimal $string $date $uuid ;")) {
+			Assert.assertTrue(value.matches("\\d{1,10} \\d{1,8}\\.\\d\\d [a-z0-9]{1,16} (19[7-9]\\d|20[0-3]\\d)-\\d\\d-\\d\\d [0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}"), value);
+		}
+	}
+
+	@Test
+	public final void testDecimal() {
+		for (String value: generateAll("main: $decimal(5,3) ;")) {
+			Assert.assertTrue(value.matches("\\d{1,2}\\.\\d{3}"), value);
+		}
+
+		for (String value: generateAll("main: $decimal(3,0) ;")) {
+			Assert.assertTrue(value.matches("\\d{1,3}"), value);
+		}
+	}
+
+	@Test
+	public final void testString() {
+		Set<Integer> lengths = new HashSet<Integer>();
+
+		for (String value: generateAll("main: '$string(2,4)' ;")) {
+			Assert.assertTrue(value.matches("'[a-z0-9]{2,4}'"), value);
+			lengths.add(value.length() - 2);
+		}
+
+		Assert.assertEquals(lengths.size(), 3);
+	}
+
+	@Test
+	public final void testDate() {
+		Set<String> values = new HashSet<String>(generateAll("main: $date(2000-02-27,2000-03-01) ;"));
+
+		Assert.assertEquals(values.size(), 4, values.toString());
+		Assert.assertTrue(values.contains("2000-02-29"));
+		Assert.assertTrue(values.contains("2000-03-01"));
+
+		values = new HashSet<String>(generateAll("main: $date(1999-12-31,2001-01-01) ;"));
+		Assert.assertEquals(values.size(), 368);
+	}
+
+	@Test
+	public final void testZipf() {
+		List<String> values = generateAll("main: $int(1,100,zipf=1) ;");
+
+		// The most popular value is picked with probability 1 / H(100), about 0.19
+		Assert.assertTrue(count(values, "1") > ITERATIONS * 0.15, "" + count(values, "1"));
+		Assert.assertTrue(count(values, "1") < ITERATIONS * 0.24, "" + count(values, "1"));
+		Assert.assertTrue(count(values, "1") > 1.5 * count(values, "2"));
+		Assert.assertTrue(count(values, "2") > count(values, "10"));
+
+		for (String value: generateAll("main: $int(1,1000000000000,zipf=0.99) ;")) {
+			long longValue = Long.parseLong(value);
+			Assert.assertTrue(longValue >= 1 && longValue <= 1000000000000L, value);
+		}
+	}
+
+	@Test
+	public final void testHotspot() {
+		int hot = 0;
+
+		for (String value: generateAll("main: $int(0,99,hotspot=0.1) ;")) {
+			if (Integer.parseInt(value) < 10) {
+				hot++;
+			}
+		}
+
+		Assert.assertTrue(hot > ITERATIONS * 0.85 && hot < ITERATIONS * 0.95, "" + hot);
+	}
+
+	@Test
+	public final void testGaussian() {
+		int central = 0;
+
+		for (String value: generateAll("main: $int(0,599,gaussian) ;")) {
+			int intValue = Integer.parseInt(value);
+			Assert.assertTrue(intValue >= 0 && intValue <= 599, value);
+
+			// Within one standard deviation of the mean, which holds about 68% of the values
+			if (intValue >= 200 && intValue < 400) {
+				central++;
+			}
+		}
+
+		Assert.assertTrue(central > ITERATIONS * 0.62 && central < ITERATIONS * 0.74, "" + central);
+	}
+
+	@Test
+	public final void testSameOutputForId() {
+		String grammar = "main: $int(1,1000,zipf=0.99) $string(8,32) $decimal $uuid $date ;";
+		GlobalContext<String> first = new ContextBuilder<String>().grammar(OPTION + grammar).build();
+		GlobalContext<String> second = new ContextBuilder<String>().grammar(OPTION + grammar).jit(true).build();
+
+		for (long id = 0; id < 100; id++) {
+			Sentence<String> firstSentence = first.sentenceFromId(id);
+			first.newThreadContext().generate(firstSentence);
+
+			Sentence<String> secondSentence = second.sentenceFromId(id);
+			second.newThreadContext().generate(secondSentence);
+
+			Assert.assertEquals(secondSentence.toString(), firstSentence.toString());
+		}
+	}
+
+	@Test
+	public final void testSameOutputWhenReused() {
+		// One Gaussian per Sentence, so a spare value carried over from the previous id would be used instead
+		String[] grammars = {
+			"main: $int(1,1000000,gaussian) ;",
+			"main: gaussian ;\ngaussian.java: {{ sentence.append(\"\" + sentence.getRandom().nextGaussian()); }};"
+		};
+
+		for (String grammar: grammars) {
+			for (SentenceRandom sentenceRandom: new SentenceRandom[] {SentenceRandom.newDefault(), SentenceRandom.newLegacy()}) {
+				GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(OPTION + grammar).sentenceRandom(sentenceRandom).build();
+				ThreadContext<String> threadContext = globalContext.newThreadContext();
+				Sentence<String> reused = globalContext.sentenceFromId(0);
+
+				for (long id = 1; id < 100; id += 2) {
+					Sentence<String> fresh = globalContext.sentenceFromId(id);
+					threadContext.generate(fresh);
+
+					reused.reset(id);
+					threadContext.generate(reused);
+
+					Assert.assertEquals(reused.toString(), fresh.toString(), grammar);
+				}
+			}
+		}
+	}
+
+	@Test
+	public final void testNotTerminals() {
+		List<String> values = generateAll("main: $set $intx $gt: ;");
+		Assert.assertEquals(values.get(0), "$set $intx $gt:");
+	}
+
+	@Test
+	public final void testWithoutOption() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("main: db.c.find({\"a\": {\"$date\": 1}}) x$int y ;").build();
+		Assert.assertEquals(ThreadContext.newThreadContext(g, 1).generateString(), "db.c.find({\"a\": {\"$date\": 1}}) x$int y");
+	}
+
+	@Test
+	public final void testSimplify() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(OPTION + "main: value ;\nvalue: $int(10,20) | $string(3,5) ;").build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		Sentence<String> sentence = c.newSentence();
+		c.generate(sentence);
+
+		SentenceSimplifier<String> simplifier = new SentenceSimplifier<String>(sentence);
+		Iterator<Sentence<String>> iterator = simplifier.iterator();
+
+		Assert.assertTrue(iterator.hasNext());
+		Assert.assertEquals(iterator.next().toString(), "10");
+	}
+
+	@Test
+	public final void testTurkishLocale() {
+		// Upper-casing "int" in a Turkish locale gives a dotted capital I, which is not a terminal type
+		Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+
+		try {
+			Assert.assertEquals(new HashSet<String>(generateAll("main: $int(1,1) ;")).size(), 1);
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testInvalidRange() {
+		generateAll("main: $int(10,1) ;");
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testInvalidDate() {
+		generateAll("main: $date(2001-02-29,2001-03-01) ;");
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testInvalidDistribution() {
+		generateAll("main: $int(1,10,zipf) ;");
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testInvalidArguments() {
+		generateAll("main: $int(1) ;");
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*\\$int\\(1,\\).*")
+	public final void testEmptyArgument() {
+		generateAll("main: $int(1,) ;");
+	}
+}
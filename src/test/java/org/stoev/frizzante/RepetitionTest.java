@@ -0,0 +1,221 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class RepetitionTest {
+	private static final int ITERATIONS = 200;
+
+	private static Set<String> generateAll(final String grammar, final boolean jit) {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("#option REPETITION\n" + grammar).jit(jit).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+		Set<String> sentences = new HashSet<String>();
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			sentences.add(c.generateString());
+		}
+
+		return sentences;
+	}
+
+	@Test
+	public final void testBraces() {
+		for (boolean jit: new boolean[] {false, true}) {
+			Set<String> sentences = generateAll("main: ( a{2,4} ) ;", jit);
+
+			Assert.assertEquals(sentences.size(), 3, sentences.toString());
+			Assert.assertTrue(sentences.contains("( a a )"));
+			Assert.assertTrue(sentences.contains("( a a a )"));
+			Assert.assertTrue(sentences.contains("( a a a a )"));
+		}
+	}
+
+	@Test
+	public final void testExactCount() {
+		Assert.assertEquals(generateAll("main: a{3} ;", false).toString(), "[a a a]");
+	}
+
+	@Test
+	public final void testOptional() {
+		for (String grammar: new String[] {"main: x [a] y ;", "main: x a? y ;"}) {
+			Set<String> sentences = generateAll(grammar, false);
+
+			Assert.assertEquals(sentences.size(), 2, sentences.toString());
+			Assert.assertTrue(sentences.contains("x a y"));
+			Assert.assertTrue(sentences.contains("x  y"));
+		}
+	}
+
+	@Test
+	public final void testStarAndPlus() {
+		for (String sentence: generateAll("main: a* ;", false)) {
+			Assert.assertTrue(sentence.matches("(a( a){0,9})?"), sentence);
+		}
+
+		Set<String> sentences = generateAll("main: a+ ;", false);
+		Assert.assertFalse(sentences.contains(""));
+
+		for (String sentence: sentences) {
+			Assert.assertTrue(sentence.matches("a( a){0,9}"), sentence);
+		}
+
+		// Geometric, so a single a is by far the most likely
+		Assert.assertTrue(sentences.contains("a"));
+	}
+
+	@Test
+	public final void testRepeatedRule() {
+		for (boolean jit: new boolean[] {false, true}) {
+			Set<String> sentences = generateAll("main: item{3} ;\nitem: foo | bar ;", jit);
+
+			Assert.assertEquals(sentences.size(), 8, sentences.toString());
+
+			for (String sentence: sentences) {
+				Assert.assertTrue(sentence.matches("(foo|bar) (foo|bar) (foo|bar)"), sentence);
+			}
+		}
+	}
+
+	@Test
+	public final void testSameOutput() {
+		String grammar = "#option REPETITION\nmain: list{0,5} ;\nlist: item+ ;\nitem: foo | bar{1,3} | baz? ;";
+		GlobalContext<String> interpreted = new ContextBuilder<String>().grammar(grammar).build();
+		GlobalContext<String> jit = new ContextBuilder<String>().grammar(grammar).jit(true).build();
+
+		ThreadContext<String> interpretedContext = interpreted.newThreadContext();
+		ThreadContext<String> jitContext = jit.newThreadContext();
+		ThreadContext<String> stackContext = interpreted.newThreadContext();
+
+		for (long id = 0; id < ITERATIONS; id++) {
+			Sentence<String> interpretedSentence = interpreted.sentenceFromId(id);
+			interpretedContext.generate(interpretedSentence);
+
+			Sentence<String> jitSentence = jit.sentenceFromId(id);
+			jitContext.generate(jitSentence);
+
+			Sentence<String> stackSentence = interpreted.sentenceFromId(id);
+			stackSentence.populate(stackContext, interpreted.getGrammar().getRule("main"));
+
+			Assert.assertEquals(jitSentence.toString(), interpretedSentence.toString());
+			Assert.assertEquals(stackSentence.toString(), interpretedSentence.toString());
+		}
+	}
+
+	@Test
+	public final void testAfterPunctuation() {
+		Set<String> sentences = generateAll("main: ([a]) ;", false);
+
+		Assert.assertEquals(sentences.size(), 2, sentences.toString());
+		Assert.assertTrue(sentences.contains("(a)"));
+		Assert.assertTrue(sentences.contains("()"));
+	}
+
+	@Test
+	public final void testSkipWhitespace() {
+		Assert.assertEquals(generateAll("#option SKIP_WHITESPACE\nmain: a{3} ;", false).toString(), "[aaa]");
+	}
+
+	@Test
+	public final void testWithoutOption() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("main: a* b{1,2} [c] ;").build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		Assert.assertEquals(c.generateString(), "a* b{1,2} [c]");
+	}
+
+	@Test
+	public final void testLargeCount() {
+		for (boolean jit: new boolean[] {false, true}) {
+			GlobalContext<String> g = new ContextBuilder<String>().grammar("#option REPETITION\n#option SKIP_WHITESPACE\nmain: a{100000} ;").jit(jit).build();
+			ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+			Assert.assertEquals(g.getGrammar().getProductionCount(), 2);
+			Assert.assertTrue(c.generateString().matches("a{100000}"));
+		}
+	}
+
+	@Test
+	public final void testNotFolded() {
+		for (boolean jit: new boolean[] {false, true}) {
+			Set<String> sentences = generateAll("main: x{3} y{0,2} ;\nx: a ;\ny: b ;", jit);
+
+			Assert.assertEquals(sentences.size(), 3, sentences.toString());
+			Assert.assertTrue(sentences.contains("a a a "));
+			Assert.assertTrue(sentences.contains("a a a b"));
+			Assert.assertTrue(sentences.contains("a a a b b"));
+		}
+	}
+
+	@Test
+	public final void testGeometric() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("#option REPETITION\n#option SKIP_WHITESPACE\nmain: a{0,3:geometric} ;").build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+		int[] counts = new int[4];
+
+		for (int i = 0; i < ITERATIONS * 10; i++) {
+			counts[c.generateString().length()]++;
+		}
+
+		// Each additional element is half as likely as the one before
+		for (int i = 1; i < counts.length; i++) {
+			Assert.assertTrue(counts[i] > 0);
+			Assert.assertTrue(counts[i] < counts[i - 1], Arrays.toString(counts));
+		}
+	}
+
+	@Test
+	public final void testSimplify() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("#option REPETITION\nmain: x a{2,5} y ;").build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			Sentence<String> sentence = c.newSentence();
+			c.generate(sentence);
+
+			if (sentence.toString().equals("x a a y")) {
+				continue;
+			}
+
+			SentenceSimplifier<String> simplifier = new SentenceSimplifier<String>(sentence);
+			Iterator<Sentence<String>> iterator = simplifier.iterator();
+
+			Assert.assertTrue(iterator.hasNext());
+			Assert.assertEquals(iterator.next().toString(), "x a a y");
+			return;
+		}
+
+		Assert.fail("No sentence with more than two repetitions was generated.");
+	}
+
+	@Test
+	public final void testBudget() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("#option REPETITION\nmain: list ;\nlist: ( list{1,3} ) | x ;").maxDepth(4).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			Assert.assertTrue(c.generateString().matches("[()x ]+"));
+		}
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testInvertedCounts() {
+		generateAll("main: a{5,2} ;", false);
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testTooManyRepetitions() {
+		generateAll("main: a{1,10000000000} ;", false);
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testUnknownDistribution() {
+		generateAll("main: a{1,2:normal} ;", false);
+	}
+}
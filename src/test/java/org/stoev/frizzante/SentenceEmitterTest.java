@@ -0,0 +1,60 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class SentenceEmitterTest {
+	private static final String GRAMMAR = "#option RANDOM_TERMINALS\nmain: foo foo bar ;\nfoo: foo1 | ü | foo3 ;\nbar: $int(1,1000) ;";
+	// Several chunks in ordered mode and several buffers in unordered mode
+	private static final int SENTENCES = 20000;
+
+	private static String emit(final GlobalContext<String> globalContext, final boolean ordered, final long count) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		SentenceEmitter<String> emitter = new SentenceEmitter<String>(globalContext, Channels.newChannel(stream), ";\n".getBytes(StandardCharsets.UTF_8));
+
+		emitter.emit(count, ordered);
+
+		Assert.assertEquals(emitter.getSentenceCount(), count);
+		Assert.assertEquals(emitter.getByteCount(), stream.size());
+		Assert.assertTrue(emitter.getReport().startsWith("Emitted " + count + " sentences"), emitter.getReport());
+
+		return new String(stream.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public final void testOrdered() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).idRange(100, Long.MAX_VALUE).threads(3).build();
+		StringBuilder expected = new StringBuilder();
+
+		for (Sentence<String> sentence: globalContext.sentences(100, SENTENCES)) {
+			expected.append(sentence.toString()).append(";\n");
+		}
+
+		Assert.assertEquals(emit(globalContext, true, SENTENCES), expected.toString());
+	}
+
+	@Test
+	public final void testUnordered() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).idMode(IdMode.PERMUTED).threads(3).build();
+		String[] lines = emit(globalContext, false, SENTENCES).split(";\n");
+		Set<String> distinct = new HashSet<String>();
+
+		Assert.assertEquals(lines.length, SENTENCES);
+
+		for (String line: lines) {
+			Assert.assertTrue(line.matches("(foo1|ü|foo3) (foo1|ü|foo3) [0-9]+"), line);
+			distinct.add(line);
+		}
+
+		Assert.assertTrue(distinct.size() > 1000);
+	}
+}
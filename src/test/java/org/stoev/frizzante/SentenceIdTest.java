@@ -23,4 +23,22 @@ public class SentenceIdTest {
 		Assert.assertEquals(sentence1.toString(), sentence2.toString());
 		Assert.assertEquals(sentence1.getId(), sentence2.getId());
 	}
+
+	@Test
+	public final void testReset() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar("main: foo foo foo foo foo;\nfoo: foo1 | foo2;").build();
+		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
+
+		Sentence<String> reusedSentence = threadContext.newSentence();
+
+		for (int i = 0; i < 10; i++) {
+			threadContext.generateInto(reusedSentence);
+
+			Sentence<String> freshSentence = globalContext.sentenceFromId(reusedSentence.getId());
+			threadContext.generate(freshSentence);
+
+			Assert.assertEquals(reusedSentence.toString(), freshSentence.toString());
+			Assert.assertEquals(reusedSentence.size(), freshSentence.size());
+		}
+	}
 }
@@ -0,0 +1,103 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class SentenceRandomTest {
+	private static final int ITERATIONS = 1000;
+
+	@Test
+	public final void testReproducible() {
+		SentenceRandom random1 = SentenceRandom.newDefault();
+		SentenceRandom random2 = SentenceRandom.newDefault();
+
+		random1.seedFromId(1);
+		random2.seedFromId(2);
+		Assert.assertNotEquals(random1.nextLong(), random2.nextLong());
+
+		random2.seedFromId(1);
+		random1.seedFromId(1);
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			Assert.assertEquals(random1.nextLong(), random2.nextLong());
+		}
+	}
+
+	@Test
+	public final void testRange() {
+		SentenceRandom random = SentenceRandom.newDefault();
+		random.seedFromId(1);
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			double d = random.nextDouble();
+			Assert.assertTrue(d >= 0 && d < 1);
+
+			int n = random.nextInt(10);
+			Assert.assertTrue(n >= 0 && n < 10);
+		}
+	}
+
+	@Test
+	public final void testSplit() {
+		SentenceRandom parent = SentenceRandom.newDefault();
+		parent.seedFromId(1);
+
+		SentenceRandom child = parent.split();
+		SentenceRandom reference = SentenceRandom.newDefault();
+		reference.seedFromId(1);
+
+		Assert.assertNotEquals(child.nextLong(), reference.nextLong());
+	}
+
+	@Test
+	public final void testLegacy() {
+		final long id = 12345;
+
+		Random oldRandom = new Random(id);
+		oldRandom.setSeed(oldRandom.nextLong());
+
+		SentenceRandom legacy = SentenceRandom.newLegacy();
+		legacy.seedFromId(id);
+
+		SentenceRandom child = legacy.split();
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			double expected = oldRandom.nextDouble();
+			Assert.assertEquals(legacy.nextDouble(), expected);
+		}
+
+		// Legacy children start from the same seed as their parent, as before
+		Random oldChildRandom = new Random(id);
+		oldChildRandom.setSeed(oldChildRandom.nextLong());
+		Assert.assertEquals(child.nextDouble(), oldChildRandom.nextDouble());
+	}
+
+	@Test
+	public final void testCachedRuleIndependent() {
+		// The cached value gets its own split stream, which must still be reproducible from the sentence id
+		String grammar = "main: 1 digit | 2 digit | 3 digit | 4 digit | 5 digit | 6 digit | 7 digit | 8 digit;\ndigit: 1 | 2 | 3 | 4 | 5 | 6 | 7 | 8;\nunused: digit_cached;";
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(grammar).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+
+		int different = 0;
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			Sentence<String> sentence = threadContext.newSentence();
+			threadContext.generate(sentence);
+
+			Sentence<String> repeat = globalContext.sentenceFromId(sentence.getId());
+			threadContext.generate(repeat);
+			Assert.assertEquals(repeat.toString(), sentence.toString());
+
+			if (!sentence.getElements().get(0).equals(sentence.getElements().get(sentence.size() - 1))) {
+				different++;
+			}
+		}
+
+		Assert.assertTrue(different > ITERATIONS / 2);
+	}
+}
@@ -0,0 +1,118 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class SentenceRangeTest {
+	private static final String GRAMMAR = "main: foo foo foo foo foo foo foo foo , bar bar_cached ;\nfoo: foo1 | foo2 | foo3 ;\nbar: bar1 | bar2 | bar3 ;";
+	private static final int SENTENCES = 2000;
+
+	private static ConcurrentMap<Long, String> generateParallel(final SentenceRange<String> range, final ForkJoinPool pool) {
+		final ConcurrentMap<Long, String> result = new ConcurrentHashMap<Long, String>();
+
+		SentenceConsumer<String> consumer = new SentenceConsumer<String>() {
+			@Override
+			public void accept(final Sentence<String> sentence) {
+				Assert.assertNull(result.put(sentence.getId(), sentence.toString()));
+			}
+		};
+
+		if (pool == null) {
+			range.parallelForEach(consumer);
+		} else {
+			range.parallelForEach(consumer, pool);
+		}
+
+		return result;
+	}
+
+	@Test
+	public final void testSameAsSequential() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).build();
+		SentenceRange<String> range = globalContext.sentences(100, SENTENCES);
+		ConcurrentMap<Long, String> parallel = generateParallel(range, new ForkJoinPool(4));
+
+		Assert.assertEquals(parallel.size(), SENTENCES);
+
+		long id = 100;
+		for (Sentence<String> sentence: range) {
+			Assert.assertEquals(sentence.getId(), id);
+			Assert.assertEquals(sentence.toString(), parallel.get(id));
+
+			// A ThreadContext that has not generated anything else yet produces the same Sentence
+			Sentence<String> fresh = globalContext.sentenceFromId(id);
+			globalContext.newThreadContext().generate(fresh);
+			Assert.assertEquals(sentence.toString(), fresh.toString());
+			id++;
+		}
+
+		Assert.assertEquals(id, 100 + SENTENCES);
+	}
+
+	@Test
+	public final void testJit() {
+		GlobalContext<String> interpreted = new ContextBuilder<String>().grammar(GRAMMAR).build();
+		GlobalContext<String> compiled = new ContextBuilder<String>().grammar(GRAMMAR).jit(true).build();
+
+		Assert.assertEquals(generateParallel(compiled.sentences(0, SENTENCES), null), generateParallel(interpreted.sentences(0, SENTENCES), null));
+	}
+
+	@Test
+	public final void testIdRange() {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).idRange(10, 5).build();
+		SentenceRange<String> range = globalContext.sentences();
+
+		// idRange() includes both ends, same as the ids picked by ThreadContext.newSentence()
+		Assert.assertEquals(range.getStart(), 10);
+		Assert.assertEquals(range.size(), 6);
+		Assert.assertEquals(generateParallel(range, null).keySet().size(), 6);
+
+		Iterator<Sentence<String>> iterator = globalContext.sentences(0, 0).iterator();
+		Assert.assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public final void testForEachChunk() throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).build();
+		SentenceRange<String> range = globalContext.sentences(100, SENTENCES * 5);
+		final StringBuilder expected = new StringBuilder();
+		final StringBuilder chunked = new StringBuilder();
+		final List<Integer> starts = new ArrayList<Integer>();
+
+		for (Sentence<String> sentence: range) {
+			starts.add(expected.length());
+			expected.append(sentence.toString()).append(';');
+		}
+
+		range.forEachChunk(new ForkJoinPool(4), false, new byte[] {';'}, new SentenceRange.ChunkConsumer() {
+			@Override
+			public boolean accept(final SentenceRange.Chunk chunk) {
+				for (int offset: chunk.getOffsets()) {
+					Assert.assertEquals(chunked.length() + offset, (int) starts.remove(0));
+				}
+
+				chunked.append(StandardCharsets.UTF_8.decode(chunk.getData()));
+				return true;
+			}
+		});
+
+		Assert.assertTrue(starts.isEmpty());
+		Assert.assertEquals(chunked.toString(), expected.toString());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testNegativeCount() {
+		new ContextBuilder<String>().grammar(GRAMMAR).build().sentences(0, -1);
+	}
+}
@@ -58,7 +58,7 @@ public class SentenceSimplifierTest {
 	@Test
 	public final void testSimplifyConstantProduction() {
 		// If we signal to the Simplifier that the important characteristics of the generated Sentence<String> is the presence of COUNT
-		// we expect that the simplifier will choose to retain the FROM DUAL constant production.
+		// we expect that the simplifier will choose the shortest derivation of from_clause, which goes through table.
 
 		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: SELECT COUNT(*) from_clause;\nfrom_clause: FROM DUAL |90% table;\ntable: T1 | T2;").build();
 		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
@@ -77,7 +77,40 @@ public class SentenceSimplifierTest {
 			}
 
 			Sentence<String> finalSentence = simplifier.getCurrentSentence();
-			Assert.assertEquals(finalSentence.toString(), "SELECT COUNT(*) FROM DUAL");
+			Assert.assertEquals(finalSentence.toString(), "SELECT COUNT(*) T1");
+		}
+	}
+
+	@Test
+	public final void testSimplifyRecursiveRule() {
+		// expr is recursive, but its shortest derivation can still be substituted
+
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("#option SKIP_WHITESPACE\nmain: expr ;\nexpr: ( expr + expr ) | ( expr * expr ) | 1 | 2 | 3 | 4 ;").build();
+		ThreadContext<String> threadContext = ThreadContext.newThreadContext(globalContext, 1);
+
+		for (int i = 0; i < 100; i++) {
+			Sentence<String> sentence = threadContext.newSentence();
+			threadContext.generate(sentence);
+
+			if (!sentence.toString().contains("*")) {
+				continue;
+			}
+
+			SentenceSimplifier<String> simplifier = new SentenceSimplifier<String>(sentence);
+
+			for (Sentence<String> testSentence : simplifier) {
+				if (testSentence.toString().contains("*")) {
+					simplifier.succeeded();
+				} else {
+					simplifier.failed();
+				}
+			}
+
+			// Every subexpression that does not contain the multiplication collapses into the shortest derivation of expr
+			String finalString = simplifier.getCurrentSentence().toString();
+			Assert.assertTrue(finalString.contains("(1*1)"), finalString);
+			Assert.assertTrue(finalString.matches("[()1+*]+"), finalString);
+			Assert.assertTrue(finalString.length() <= sentence.toString().length());
 		}
 	}
 
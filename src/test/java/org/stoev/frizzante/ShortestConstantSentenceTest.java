@@ -1,5 +1,6 @@
 package org.stoev.frizzante;
 
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 public class ShortestConstantSentenceTest {
@@ -29,4 +30,24 @@ public class ShortestConstantSentenceTest {
 	public final void testTreeConstantSentence() {
 		TestUtil.assertShortestConstantSentence("main: foo | bar | baz ;\n foo: foo2 foo2;\n bar: bar2;\nbaz: baz1 | baz2;", "bar2");
  	}
+
+	@Test
+	public final void testRecursiveConstantSentence() {
+		TestUtil.assertShortestConstantSentence("main: expr ;\nexpr: expr + expr | expr * expr | 123 | 45 ;", "45");
+		TestUtil.assertShortestConstantSentence("main: list ;\nlist: item , list | item ;\nitem: x | y;", "x");
+ 	}
+
+	@Test
+	public final void testNonConstantSentence() {
+		GlobalContext<String> globalContext = new GlobalContext.ContextBuilder<String>().grammar("main: foo java | foo loop;\njava.java: {{ sentence.append(\"x\"); }};\nloop: loop loop;").build();
+		GrammarRule<String> main = (GrammarRule<String>) globalContext.getGrammar().getRule("main");
+		GrammarRule<String> loop = (GrammarRule<String>) globalContext.getGrammar().getRule("loop");
+
+		// The only terminating derivation of main runs Java code, so it is not constant
+		Assert.assertNull(main.getShortestConstantSentence());
+		Assert.assertEquals(main.getShortestProductionIndex(), 0);
+
+		Assert.assertNull(loop.getShortestConstantSentence());
+		Assert.assertEquals(loop.getShortestProductionIndex(), -1);
+ 	}
 }
@@ -0,0 +1,69 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class TraceLevelTest {
+	private static final String GRAMMAR = "main: foo bar | bar;\nfoo: foo1 | foo2 | foo3;\nbar: bar1 | bar2 | ;";
+	private static final int ITERATIONS = 100;
+
+	private static Sentence<String> generate(final TraceLevel traceLevel, final long id, final boolean useStack) {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).tracing(traceLevel).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+		Sentence<String> sentence = globalContext.sentenceFromId(id);
+
+		if (useStack) {
+			sentence.populate(threadContext, globalContext.getGrammar().getRule("main"));
+		} else {
+			threadContext.generate(sentence);
+		}
+
+		return sentence;
+	}
+
+	@Test
+	public final void testSameOutput() {
+		for (boolean useStack: new boolean[] {false, true}) {
+			for (long id = 0; id < ITERATIONS; id++) {
+				Sentence<String> full = generate(TraceLevel.FULL, id, useStack);
+				Sentence<String> productions = generate(TraceLevel.PRODUCTIONS, id, useStack);
+				Sentence<String> none = generate(TraceLevel.NONE, id, useStack);
+
+				Assert.assertEquals(productions.toString(), full.toString());
+				Assert.assertEquals(none.toString(), full.toString());
+
+				Assert.assertEquals(none.getProductionInstances().size(), 0);
+				Assert.assertEquals(productions.getProductionInstances().size(), full.getProductionInstances().size());
+
+				for (int i = 0; i < full.getProductionInstances().size(); i++) {
+					GrammarProduction<String> expected = full.getProductionInstances().get(i).getProduction();
+					GrammarProduction<String> actual = productions.getProductionInstances().get(i).getProduction();
+
+					Assert.assertEquals(actual.getParent().getName(), expected.getParent().getName());
+					Assert.assertEquals(actual.getIndex(), expected.getIndex());
+				}
+			}
+		}
+	}
+
+	@Test
+	public final void testAdaptiveWithProductions() {
+		Sentence<String> sentence = generate(TraceLevel.PRODUCTIONS, 1, false);
+		sentence.failed(0.5);
+		sentence.succeeded(0.5);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testAdaptiveWithoutTracing() {
+		Sentence<String> sentence = generate(TraceLevel.NONE, 1, false);
+		sentence.failed(0.5);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public final void testSimplifierWithoutFullTrace() {
+		Sentence<String> sentence = generate(TraceLevel.PRODUCTIONS, 1, false);
+		new SentenceSimplifier<String>(sentence);
+	}
+}
@@ -0,0 +1,224 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class ValuePoolTest {
+	private static final int ITERATIONS = 1000;
+	private static final String OPTIONS = "#option RANDOM_TERMINALS\n#option VALUE_POOLS\n";
+	private static final String GRAMMAR = OPTIONS + "main: insert | select ;\ninsert: INSERT $publish(id) ;\nid: $int(1,1000000000) ;\n";
+
+	@Test
+	public final void testRingBuffer() {
+		ValuePool<String> pool = new ValuePool<String>("test", 3);
+		Assert.assertEquals(pool.size(), 0);
+		Assert.assertNull(pool.getRecent(0));
+
+		for (int i = 0; i < 5; i++) {
+			Sentence<String> value = Sentence.newSentence(i);
+			value.append("v" + i);
+			pool.publish(value);
+		}
+
+		Assert.assertEquals(pool.size(), 3);
+		Assert.assertEquals(pool.getPublishedCount(), 5);
+		Assert.assertEquals(pool.getRecent(0).toString(), "v4");
+		Assert.assertEquals(pool.getRecent(2).toString(), "v2");
+		Assert.assertNull(pool.getRecent(3));
+		Assert.assertEquals(pool.get(0).toString(), "v3");
+	}
+
+	@Test
+	public final void testSampleOnlyPublishedValues() {
+		for (boolean jit: new boolean[] {false, true}) {
+			GlobalContext<String> g = new ContextBuilder<String>().grammar(GRAMMAR + "select: SELECT $sample(id) ;").jit(jit).build();
+			ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+			Set<String> inserted = new HashSet<String>();
+			int hits = 0;
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				String sentence = c.generateString();
+				String value = sentence.substring(sentence.indexOf(' ') + 1);
+
+				if (sentence.startsWith("INSERT")) {
+					inserted.add(value);
+				} else if (!inserted.isEmpty()) {
+					Assert.assertTrue(inserted.contains(value), sentence);
+					hits++;
+				}
+			}
+
+			Assert.assertTrue(hits > ITERATIONS / 4);
+		}
+	}
+
+	@Test
+	public final void testCapacity() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(OPTIONS + "main: $publish(id,10) | $sample(id) ;\nid: $int(1,1000000000) ;").build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			c.generateString();
+		}
+
+		ValuePool<String> pool = g.getGrammar().getValuePool("id");
+		Assert.assertEquals(pool.getCapacity(), 10);
+		Assert.assertEquals(pool.size(), 10);
+		Assert.assertTrue(pool.getPublishedCount() > ITERATIONS / 4);
+	}
+
+	@Test
+	public final void testLatest() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(OPTIONS + "main: P $publish(id) | S $sample(id,latest) ;\nid: $int(1,1000000000) ;").build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+		List<String> published = new ArrayList<String>();
+		int samples = 0;
+		int recentSamples = 0;
+
+		for (int i = 0; i < ITERATIONS * 10; i++) {
+			String sentence = c.generateString();
+			String value = sentence.substring(2);
+
+			if (sentence.startsWith("P")) {
+				published.add(value);
+			} else if (published.size() >= 100) {
+				samples++;
+
+				if (published.subList(published.size() - 10, published.size()).contains(value)) {
+					recentSamples++;
+				}
+			}
+		}
+
+		// Zipfian over the age, so the ten latest values out of thousands get about 30% of the picks
+		Assert.assertTrue(recentSamples > samples / 5, recentSamples + " of " + samples);
+	}
+
+	private static int countNewest(final GlobalContext<String> g, final String sample, final int samples) {
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+		String newest = g.getGrammar().getValuePool("id").getRecent(0).toString();
+		int newestSamples = 0;
+
+		// Only the $sample element is generated, so that nothing else is published in between
+		for (int i = 0; i < samples; i++) {
+			Sentence<String> sentence = c.newSentence();
+			sentence.populate(c, g.getGrammar().getRule(sample));
+
+			if (sentence.toString().equals(newest)) {
+				newestSamples++;
+			}
+		}
+
+		return newestSamples;
+	}
+
+	private static void publish(final ValuePool<String> pool, final int count) {
+		for (int i = 0; i < count; i++) {
+			Sentence<String> value = Sentence.newSentence(i);
+			value.append("v" + pool.getPublishedCount());
+			pool.publish(value);
+		}
+	}
+
+	@Test
+	public final void testSkewWhileFilling() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(OPTIONS + "main: $sample(id,zipf=0.99) | $publish(id) ;\nid: fresh ;").build();
+		ValuePool<String> pool = g.getGrammar().getValuePool("id");
+
+		// Zipfian over the 50 values present, the newest one gets about 22% of the picks. Folding a distribution
+		// over the whole capacity onto them would give it about 11%.
+		publish(pool, 50);
+		Assert.assertTrue(countNewest(g, "$sample(id,zipf=0.99)", ITERATIONS * 5) > ITERATIONS * 5 * 17 / 100);
+	}
+
+	@Test
+	public final void testSkewByAge() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar(OPTIONS + "main: $sample(id,zipf=2) | $publish(id,10) ;\nid: fresh ;").build();
+		ValuePool<String> pool = g.getGrammar().getValuePool("id");
+
+		// The hot value is the newest one, wherever it sits in the ring buffer
+		for (int wraps = 0; wraps < 3; wraps++) {
+			publish(pool, 7);
+			Assert.assertTrue(countNewest(g, "$sample(id,zipf=2)", ITERATIONS) > ITERATIONS / 2);
+		}
+	}
+
+	@Test
+	public final void testConcurrent() throws InterruptedException {
+		final GlobalContext<String> g = new ContextBuilder<String>().grammar(GRAMMAR + "select: SELECT $sample(id,zipf=0.99) ;").build();
+		final Set<String> inserted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final List<String> selected = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicInteger failures = new AtomicInteger();
+
+		Thread[] threads = new Thread[4];
+
+		for (int t = 0; t < threads.length; t++) {
+			final ThreadContext<String> c = g.newThreadContext(t + 1);
+
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < ITERATIONS; i++) {
+							String sentence = c.generateString();
+							String value = sentence.substring(sentence.indexOf(' ') + 1);
+
+							if (sentence.startsWith("INSERT")) {
+								inserted.add(value);
+							} else {
+								selected.add(value);
+							}
+						}
+					} catch (RuntimeException e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+
+			threads[t].start();
+		}
+
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(failures.get(), 0);
+
+		int hits = 0;
+
+		for (String value: selected) {
+			if (inserted.contains(value)) {
+				hits++;
+			}
+		}
+
+		// Only the selects that run before the first insert, or that catch a slot being filled, miss
+		Assert.assertTrue(hits > selected.size() * 0.9, hits + " of " + selected.size());
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testNeverPublished() {
+		new ContextBuilder<String>().grammar(OPTIONS + "main: $sample(id) ;\nid: 1 ;").build();
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testMissingRule() {
+		new ContextBuilder<String>().grammar(OPTIONS + "main: $publish(id) ;").build();
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public final void testConflictingCapacity() {
+		new ContextBuilder<String>().grammar(OPTIONS + "main: $publish(id,10) $publish(id,20) ;\nid: 1 ;").build();
+	}
+}
@@ -83,6 +83,25 @@ public class VisitorsTest {
 		c.generateString();
 	}
 
+	@Test
+	public final void testVisitorException() {
+		class TestVisitor {
+			public void thrower(final ThreadContext<String> context, final Sentence<String> sentence, final Sentence<String> argument) {
+				throw new UnsupportedOperationException("thrower");
+			}
+		}
+
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("main: thrower;").visitor(new TestVisitor()).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		try {
+			c.generateString();
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+		}
+	}
+
 	@Test
 	public final void testVisitorArguments() {
 		String grammar = "main: visitor;\nvisitor: TWO FOUR;";
@@ -233,6 +252,48 @@ public class VisitorsTest {
 		Assert.assertEquals(i.next().getValue(), 1 + 2);
 	}
 
+	public static final class PublicVisitor {
+		public void count(final ThreadContext<String> context, final Sentence<String> sentence, final Sentence<String> argument) {
+			int count = 0;
+
+			for (String arg: argument) {
+				count++;
+			}
 
+			sentence.add("count" + count);
+		}
+
+		public void thrower(final ThreadContext<String> context, final Sentence<String> sentence, final Sentence<?> argument) {
+			throw new UnsupportedOperationException("thrower");
+		}
 
+		void hidden(final ThreadContext<String> context, final Sentence<String> sentence, final Sentence<String> argument) {
+			sentence.add("hidden");
+		}
+	}
+
+	@Test
+	public final void testVisitorAdapter() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("main: count hidden;\ncount: a b c;").visitor(new PublicVisitor()).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		Assert.assertEquals(c.generateString(), "count5 hidden");
+		Assert.assertTrue(((JavaVisitor<String>) g.getGrammar().getRule("count")).isCalledThroughAdapter());
+		Assert.assertFalse(((JavaVisitor<String>) g.getGrammar().getRule("hidden")).isCalledThroughAdapter());
+	}
+
+	@Test
+	public final void testVisitorAdapterException() {
+		GlobalContext<String> g = new ContextBuilder<String>().grammar("main: thrower;").visitor(new PublicVisitor()).build();
+		ThreadContext<String> c = ThreadContext.newThreadContext(g, 1);
+
+		try {
+			c.generateString();
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+		}
+
+		Assert.assertTrue(((JavaVisitor<String>) g.getGrammar().getRule("thrower")).isCalledThroughAdapter());
+	}
 }
@@ -0,0 +1,76 @@
+package org.stoev.frizzante;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.stoev.frizzante.GlobalContext.ContextBuilder;
+
+public class WriteToTest {
+	private static final String GRAMMAR = "main: foo , bar | тест bar | bar ;\nfoo: \"x\" | ü ;\nbar.java: {{ sentence.append(\"β\" + sentence.getRandom().nextInt(10)); }};";
+	private static final int ITERATIONS = 100;
+
+	private static void assertWritten(final boolean jit) throws IOException {
+		GlobalContext<String> globalContext = new ContextBuilder<String>().grammar(GRAMMAR).jit(jit).build();
+		ThreadContext<String> threadContext = globalContext.newThreadContext();
+		Sentence<String> sentence = threadContext.newSentence();
+
+		File file = File.createTempFile("frizzante", ".out");
+		file.deleteOnExit();
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				threadContext.generateInto(sentence);
+				byte[] expected = sentence.toString().getBytes(StandardCharsets.UTF_8);
+
+				Assert.assertEquals(sentence.getEncodedLength(), expected.length);
+
+				ByteBuffer buffer = ByteBuffer.allocate(sentence.getEncodedLength());
+				sentence.writeTo(buffer);
+				Assert.assertFalse(buffer.hasRemaining());
+				Assert.assertEquals(buffer.array(), expected);
+
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				sentence.writeTo(Channels.newChannel(stream));
+				Assert.assertEquals(stream.toByteArray(), expected);
+
+				fileChannel.truncate(0);
+				fileChannel.position(0);
+				sentence.writeTo(fileChannel);
+				Assert.assertEquals(Files.readAllBytes(file.toPath()), expected);
+			}
+		}
+	}
+
+	@Test
+	public final void testInterpreted() throws IOException {
+		assertWritten(false);
+	}
+
+	@Test
+	public final void testJit() throws IOException {
+		assertWritten(true);
+	}
+
+	@Test
+	public final void testModifiedElements() {
+		Sentence<String> sentence = Sentence.newSentence(1);
+		sentence.appendEncoded("a", "a".getBytes(StandardCharsets.UTF_8));
+		sentence.getElements().add("ß");
+
+		ByteBuffer buffer = ByteBuffer.allocate(sentence.getEncodedLength());
+		sentence.writeTo(buffer);
+		Assert.assertEquals(new String(buffer.array(), StandardCharsets.UTF_8), "aß");
+	}
+}